@@ -1,10 +1,16 @@
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.CancellationException;
 
 public class Address {
-    private String street, neighbourhood, district, city, country;
+    /**
+     * Shared dictionary of the place names.
+     */
+    public static final StringPool PLACES = new StringPool();
+
+    private int street = StringPool.NONE, neighbourhood = StringPool.NONE, district = StringPool.NONE, city = StringPool.NONE, country = StringPool.NONE;
 
     private double latitude, longitude;
 
@@ -19,29 +25,32 @@ public class Address {
     );
 
     Address(String country, String city, String district, String neighbourhood, String street, double latitude, double longitude) {
-        this.country = country;
-        this.city = city;
-        this.district = district;
-        this.neighbourhood = neighbourhood;
-        this.street = street;
+        this.country = PLACES.intern(country);
+        this.city = PLACES.intern(city);
+        this.district = PLACES.intern(district);
+        this.neighbourhood = PLACES.intern(neighbourhood);
+        this.street = PLACES.intern(street);
         this.latitude = latitude;
         this.longitude = longitude;
     }
 
+    /**
+     * Search filter, null parts match everything. Strings are only looked up so searching does not grow the dictionary.
+     */
     Address(String country, String city, String district, String neighbourhood, String street) {
-        this.country = country;
-        this.city = city;
-        this.district = district;
-        this.neighbourhood = neighbourhood;
-        this.street = street;
+        this.country = PLACES.findIgnoreCase(country);
+        this.city = PLACES.findIgnoreCase(city);
+        this.district = PLACES.findIgnoreCase(district);
+        this.neighbourhood = PLACES.findIgnoreCase(neighbourhood);
+        this.street = PLACES.findIgnoreCase(street);
     }
 
     Address(ConsoleReader reader) throws CancellationException {
-        this.country = reader.getAnswer(QUESTIONS.get(0));
-        this.city = reader.getAnswer(QUESTIONS.get(1));
-        this.district = reader.getAnswer(QUESTIONS.get(2));
-        this.neighbourhood = reader.getAnswer(QUESTIONS.get(3));
-        this.street = reader.getAnswer(QUESTIONS.get(4));
+        this.country = PLACES.intern(reader.getAnswer(QUESTIONS.get(0)));
+        this.city = PLACES.intern(reader.getAnswer(QUESTIONS.get(1)));
+        this.district = PLACES.intern(reader.getAnswer(QUESTIONS.get(2)));
+        this.neighbourhood = PLACES.intern(reader.getAnswer(QUESTIONS.get(3)));
+        this.street = PLACES.intern(reader.getAnswer(QUESTIONS.get(4)));
 
         try {
             String latitudeS = reader.getAnswer(QUESTIONS.get(5));
@@ -62,11 +71,11 @@ public class Address {
         String country, city, district, neighbourhood, street, latitudeS, longitudeS;
         double latitude = -1, longitude = -1;
 
-        country = reader.getAnswer(QUESTIONS.get(0).withLabel("Country (" + this.country + ")").withRequired(false), 30);
-        city = reader.getAnswer(QUESTIONS.get(1).withLabel("City (" + this.city + ")").withRequired(false), 30);
-        district = reader.getAnswer(QUESTIONS.get(2).withLabel("District (" + this.district + ")").withRequired(false), 30);
-        neighbourhood = reader.getAnswer(QUESTIONS.get(3).withLabel("Neighbourhood (" + this.neighbourhood + ")").withRequired(false), 30);
-        street = reader.getAnswer(QUESTIONS.get(4).withLabel("Street (" + this.street + ")").withRequired(false), 30);
+        country = reader.getAnswer(QUESTIONS.get(0).withLabel("Country (" + getCountry() + ")").withRequired(false), 30);
+        city = reader.getAnswer(QUESTIONS.get(1).withLabel("City (" + getCity() + ")").withRequired(false), 30);
+        district = reader.getAnswer(QUESTIONS.get(2).withLabel("District (" + getDistrict() + ")").withRequired(false), 30);
+        neighbourhood = reader.getAnswer(QUESTIONS.get(3).withLabel("Neighbourhood (" + getNeighbourhood() + ")").withRequired(false), 30);
+        street = reader.getAnswer(QUESTIONS.get(4).withLabel("Street (" + getStreet() + ")").withRequired(false), 30);
 
         try {
             latitudeS = reader.getAnswer(QUESTIONS.get(5).withLabel("Latitude (" + this.latitude + ")").withRequired(false), 30);
@@ -78,71 +87,91 @@ public class Address {
             System.out.println("Can not parse latitude and longitude.");
         }
 
-        this.country = country.isBlank() ? this.country : country;
-        this.city = city.isBlank() ? this.city : city;
-        this.district = district.isBlank() ? this.district : district;
-        this.neighbourhood = neighbourhood.isBlank() ? this.neighbourhood : neighbourhood;
-        this.street = street.isBlank() ? this.street : street;
+        this.country = country.isBlank() ? this.country : PLACES.intern(country);
+        this.city = city.isBlank() ? this.city : PLACES.intern(city);
+        this.district = district.isBlank() ? this.district : PLACES.intern(district);
+        this.neighbourhood = neighbourhood.isBlank() ? this.neighbourhood : PLACES.intern(neighbourhood);
+        this.street = street.isBlank() ? this.street : PLACES.intern(street);
         this.latitude = latitude == -1 ? this.latitude : latitude;
         this.longitude = longitude == -1 ? this.longitude : longitude;
     }
 
     public String toString() {
-        return neighbourhood + ", " + street + ", " + district + "/" + city + ", " + country;
+        return getNeighbourhood() + ", " + getStreet() + ", " + getDistrict() + "/" + getCity() + ", " + getCountry();
     }
 
     public String toStringReverse() {
-        return country + ", " + city + ", " + district + "/" + neighbourhood + ", " + street;
+        return getCountry() + ", " + getCity() + ", " + getDistrict() + "/" + getNeighbourhood() + ", " + getStreet();
+    }
+
+    /**
+     * Orders addresses from the country down to the street, like toStringReverse, by the Turkish alphabetical rank of each part.
+     */
+    public static Comparator<Address> order() {
+        int[] ranks = PLACES.ranks();
+        return Comparator.<Address>comparingInt(address -> StringPool.rank(ranks, address.country))
+                .thenComparingInt(address -> StringPool.rank(ranks, address.city))
+                .thenComparingInt(address -> StringPool.rank(ranks, address.district))
+                .thenComparingInt(address -> StringPool.rank(ranks, address.neighbourhood))
+                .thenComparingInt(address -> StringPool.rank(ranks, address.street));
+    }
+
+    /**
+     * Fold codes of the country, city, district and neighbourhood, the levels of the region tree.
+     * Parts a filter leaves open are NONE, parts it names that no address has are MISSING.
+     */
+    public int[] regionKeys() {
+        return new int[]{PLACES.fold(country), PLACES.fold(city), PLACES.fold(district), PLACES.fold(neighbourhood)};
     }
 
     public boolean matches(Address filter) {
         if (filter == null) return true;
-        if (filter.country != null && !filter.country.equalsIgnoreCase(this.country)) return false;
-        if (filter.city != null && !filter.city.equalsIgnoreCase(this.city)) return false;
-        if (filter.district != null && !filter.district.equalsIgnoreCase(this.district)) return false;
-        if (filter.neighbourhood != null && !filter.neighbourhood.equalsIgnoreCase(this.neighbourhood)) return false;
-        if (filter.street != null && !filter.street.equalsIgnoreCase(this.street)) return false;
+        if (filter.country != StringPool.NONE && filter.country != PLACES.fold(this.country)) return false;
+        if (filter.city != StringPool.NONE && filter.city != PLACES.fold(this.city)) return false;
+        if (filter.district != StringPool.NONE && filter.district != PLACES.fold(this.district)) return false;
+        if (filter.neighbourhood != StringPool.NONE && filter.neighbourhood != PLACES.fold(this.neighbourhood)) return false;
+        if (filter.street != StringPool.NONE && filter.street != PLACES.fold(this.street)) return false;
         return true;
     }
 
     public String getStreet() {
-        return street;
+        return PLACES.value(street);
     }
 
     public void setStreet(String street) {
-        this.street = street;
+        this.street = PLACES.intern(street);
     }
 
     public String getNeighbourhood() {
-        return neighbourhood;
+        return PLACES.value(neighbourhood);
     }
 
     public void setNeighbourhood(String neighbourhood) {
-        this.neighbourhood = neighbourhood;
+        this.neighbourhood = PLACES.intern(neighbourhood);
     }
 
     public String getDistrict() {
-        return district;
+        return PLACES.value(district);
     }
 
     public void setDistrict(String district) {
-        this.district = district;
+        this.district = PLACES.intern(district);
     }
 
     public String getCity() {
-        return city;
+        return PLACES.value(city);
     }
 
     public void setCity(String city) {
-        this.city = city;
+        this.city = PLACES.intern(city);
     }
 
     public String getCountry() {
-        return country;
+        return PLACES.value(country);
     }
 
     public void setCountry(String country) {
-        this.country = country;
+        this.country = PLACES.intern(country);
     }
 
     public double getLatitude() {
@@ -0,0 +1,293 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Ancestry of the people of a PersonStore, keyed by slot and kept up to date as parents are linked and unlinked.
+ * Everybody has two parents, so ancestors form a graph rather than a tree. The mother line and the father line are trees
+ * though, each has jump tables to the 2^k-th mother or father, so an ancestor or the common ancestor on a line is found
+ * in O(log n) jumps. Ancestors off those two lines are found by walking up, the generation of a person is one more than
+ * that of the younger parent and an ancestor is always in an older generation, which rules out most of the family.
+ * Parents that are not stored are left out.
+ */
+public class AncestorIndex {
+
+    private enum Line {
+        MOTHER, FATHER
+    }
+
+    private static final int NONE = -1;
+
+    private final PersonStore store;
+
+    private int[] generations = new int[16];
+
+    private final Table[] lines = {new Table(), new Table()};
+
+    private record Refresh(Person person, int reach) {
+    }
+
+    AncestorIndex(PersonStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Files the person stored in the slot under its parents, and its children under it.
+     */
+    void add(int slot, Person person) {
+        ensureCapacity(slot);
+        refresh(person);
+        refreshChildren(person);
+    }
+
+    /**
+     * Clears the slot of a removed person and refiles its children, who have one parent less now.
+     */
+    void remove(int slot, Person person) {
+        generations[slot] = 0;
+        for (Table line : lines) line.clear(slot);
+        refreshChildren(person);
+    }
+
+    /**
+     * Refiles the person, and everybody below it, after one of its parents changed.
+     */
+    void linked(Person person) {
+        if (person.getSlot() >= 0) refresh(person);
+    }
+
+    /**
+     * Number of generations above the person, 0 for people without stored parents.
+     */
+    public int generation(Person person) {
+        return person.getSlot() < 0 ? 0 : generations[person.getSlot()];
+    }
+
+    /**
+     * Whether the first person is a parent, grandparent or further ancestor of the second.
+     * Ancestors on the mother or father line are found with a few jumps, others by walking up the parents that are
+     * still in a younger generation than the ancestor.
+     */
+    public boolean isAncestor(Person ancestor, Person person) {
+        if (ancestor.getSlot() < 0 || person.getSlot() < 0) return false;
+        int target = ancestor.getSlot(), generation = generations[target];
+        if (generation >= generations[person.getSlot()]) return false;
+
+        for (Table line : lines) {
+            int up = line.depths[person.getSlot()] - line.depths[target];
+            if (up > 0 && line.jump(person.getSlot(), up) == target) return true;
+        }
+
+        BitSet visited = new BitSet();
+        ArrayDeque<Person> stack = new ArrayDeque<>();
+        stack.push(person);
+        while (!stack.isEmpty()) {
+            Person current = stack.pop();
+            for (Person parent : parents(current)) {
+                if (parent == ancestor) return true;
+                if (generations[parent.getSlot()] > generation && !visited.get(parent.getSlot())) {
+                    visited.set(parent.getSlot());
+                    stack.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the common ancestor of both in the youngest generation, one of them if it is an ancestor of the other, or null.
+     * The common ancestors on the mother and father lines are found with jumps, the walk only looks for a younger one.
+     * Ancestors are taken youngest generation first, so all the descendants that lead to one are taken before it,
+     * and the walk stops at the first one reached from both.
+     */
+    public Person commonAncestor(Person first, Person second) {
+        if (first.getSlot() < 0 || second.getSlot() < 0) return null;
+        if (first == second || isAncestor(first, second)) return first;
+        if (isAncestor(second, first)) return second;
+
+        int found = NONE;
+        for (Table line : lines) {
+            int slot = line.common(first.getSlot(), second.getSlot());
+            if (slot != NONE && (found == NONE || generations[slot] > generations[found])) found = slot;
+        }
+        int oldest = found == NONE ? 0 : generations[found];
+
+        BitSet fromFirst = new BitSet(), fromSecond = new BitSet();
+        PriorityQueue<Person> queue = new PriorityQueue<>((a, b) -> Integer.compare(generations[b.getSlot()], generations[a.getSlot()]));
+        fromFirst.set(first.getSlot());
+        fromSecond.set(second.getSlot());
+        queue.add(first);
+        queue.add(second);
+
+        while (!queue.isEmpty()) {
+            Person person = queue.poll();
+            int slot = person.getSlot();
+            if (generations[slot] < oldest) break;
+            if (fromFirst.get(slot) && fromSecond.get(slot)) return person;
+
+            for (Person parent : parents(person)) {
+                int parentSlot = parent.getSlot();
+                if (generations[parentSlot] < oldest) continue;
+                boolean queued = fromFirst.get(parentSlot) || fromSecond.get(parentSlot);
+                if (fromFirst.get(slot)) fromFirst.set(parentSlot);
+                if (fromSecond.get(slot)) fromSecond.set(parentSlot);
+                if (!queued) queue.add(parent);
+            }
+        }
+        return found == NONE ? null : store.bySlot(found);
+    }
+
+    /**
+     * Recomputes the entries of the person, and of the people below it as far as its entries reach.
+     * A jump table entry skips up to 2^k generations, so when a person changes, the people that many generations below it
+     * are checked even if the ones in between did not change. A person reached before one of its parents was refiled is
+     * refiled again once that parent is.
+     */
+    private void refresh(Person person) {
+        ArrayDeque<Refresh> queue = new ArrayDeque<>();
+        queue.add(new Refresh(person, 1));
+        // Reach each person passed on, someone found again over another path only goes on if it reaches further
+        Map<Person, Integer> passed = new HashMap<>();
+        while (!queue.isEmpty()) {
+            Refresh refresh = queue.poll();
+            Person current = refresh.person;
+            int slot = current.getSlot();
+            if (slot < 0) continue;
+
+            int mother = stored(current.getMother()), father = stored(current.getFather());
+            int generation = Math.max(mother == NONE ? 0 : generations[mother] + 1, father == NONE ? 0 : generations[father] + 1);
+            // A person can only be its own ancestor in broken data, the count would grow forever
+            if (generation > store.slotCount()) continue;
+
+            boolean changed = generations[slot] != generation;
+            generations[slot] = generation;
+            changed |= lines[Line.MOTHER.ordinal()].set(slot, mother);
+            changed |= lines[Line.FATHER.ordinal()].set(slot, father);
+
+            int reach = changed ? reach() : refresh.reach - 1;
+            if (reach <= 0 || current.getChildren().isEmpty()) continue;
+            if (!changed && reach <= passed.getOrDefault(current, 0)) continue;
+            passed.put(current, reach);
+            for (Person child : current.getChildren()) queue.add(new Refresh(child, reach));
+        }
+    }
+
+    /**
+     * Generations the longest jump skips.
+     */
+    private int reach() {
+        int levels = 0;
+        for (Table line : lines) levels = Math.max(levels, line.jumps.size());
+        return 1 << (levels - 1);
+    }
+
+    private void refreshChildren(Person person) {
+        for (Person child : person.getChildren()) refresh(child);
+    }
+
+    private List<Person> parents(Person person) {
+        List<Person> parents = new ArrayList<>(2);
+        if (stored(person.getMother()) != NONE) parents.add(person.getMother());
+        if (stored(person.getFather()) != NONE) parents.add(person.getFather());
+        return parents;
+    }
+
+    private int stored(Person parent) {
+        return parent == null || store.bySlot(parent.getSlot()) != parent ? NONE : parent.getSlot();
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot < generations.length) return;
+        generations = Arrays.copyOf(generations, Math.max(slot + 1, generations.length * 2));
+        for (Table line : lines) line.ensureCapacity(generations.length);
+    }
+
+    /**
+     * Jump tables of one line: jumps[k][slot] is the 2^k-th parent up the line, depths the number of parents above.
+     * A level is added when the line gets deeper than the levels reach.
+     */
+    private static class Table {
+        private int[] depths = new int[16];
+        private final List<int[]> jumps = new ArrayList<>(List.of(filled(16)));
+
+        /**
+         * Points the slot to its parent and returns whether that changed any of its entries.
+         */
+        private boolean set(int slot, int parent) {
+            int depth = parent == NONE ? 0 : depths[parent] + 1;
+            while (depth >= 1 << jumps.size()) addLevel();
+
+            boolean changed = depths[slot] != depth;
+            depths[slot] = depth;
+            int up = parent;
+            for (int[] level : jumps) {
+                changed |= level[slot] != up;
+                level[slot] = up;
+                up = up == NONE ? NONE : level[up];
+            }
+            return changed;
+        }
+
+        private void clear(int slot) {
+            depths[slot] = 0;
+            for (int[] level : jumps) level[slot] = NONE;
+        }
+
+        private int jump(int slot, int up) {
+            if (up > depths[slot]) return NONE;
+            for (int k = 0; up > 0 && slot != NONE; k++, up >>= 1) {
+                if ((up & 1) != 0) slot = jumps.get(k)[slot];
+            }
+            return slot;
+        }
+
+        private int common(int first, int second) {
+            if (depths[first] < depths[second]) {
+                int swap = first;
+                first = second;
+                second = swap;
+            }
+            first = jump(first, depths[first] - depths[second]);
+            if (first == second) return first;
+
+            for (int k = jumps.size() - 1; k >= 0; k--) {
+                int[] level = jumps.get(k);
+                if (level[first] != level[second]) {
+                    first = level[first];
+                    second = level[second];
+                }
+            }
+            return jumps.get(0)[first];
+        }
+
+        private void addLevel() {
+            int[] below = jumps.get(jumps.size() - 1);
+            int[] level = filled(below.length);
+            for (int slot = 0; slot < below.length; slot++) {
+                if (below[slot] != NONE) level[slot] = below[below[slot]];
+            }
+            jumps.add(level);
+        }
+
+        private void ensureCapacity(int capacity) {
+            depths = Arrays.copyOf(depths, capacity);
+            for (int k = 0; k < jumps.size(); k++) {
+                int[] level = jumps.get(k);
+                int[] grown = Arrays.copyOf(level, capacity);
+                Arrays.fill(grown, level.length, capacity, NONE);
+                jumps.set(k, grown);
+            }
+        }
+
+        private static int[] filled(int length) {
+            int[] array = new int[length];
+            Arrays.fill(array, NONE);
+            return array;
+        }
+    }
+}
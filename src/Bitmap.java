@@ -0,0 +1,314 @@
+import java.util.Arrays;
+
+/**
+ * Compressed set of slots. Slots are split into chunks of 65536, a chunk with few slots keeps them as a sorted char array,
+ * a fuller one as 1024 words of bits. And, or and andNot work a word at a time where both sides are words.
+ * Iteration is in ascending order, which is slot order.
+ */
+public class Bitmap {
+
+    private static final int ARRAY_MAX = 4096;
+
+    private static final int WORDS = 1024;
+
+    private char[] keys = new char[4];
+
+    /**
+     * Either a char[] of sorted low bits or a long[WORDS] of bits.
+     */
+    private Object[] containers = new Object[4];
+
+    private int[] cardinalities = new int[4];
+
+    private int size;
+
+    public void add(int slot) {
+        int index = containerIndex(slot, true);
+        Object container = containers[index];
+        char low = (char) slot;
+
+        if (container instanceof long[] words) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinalities[index]++;
+            }
+            return;
+        }
+
+        char[] array = (char[]) container;
+        int cardinality = cardinalities[index];
+        // Slots are mostly added in ascending order while loading
+        int position = cardinality > 0 && array[cardinality - 1] < low ? -cardinality - 1 : Arrays.binarySearch(array, 0, cardinality, low);
+        if (position >= 0) return;
+        position = -position - 1;
+
+        if (cardinality == ARRAY_MAX) {
+            long[] words = toWords(array, cardinality);
+            words[low >>> 6] |= 1L << low;
+            containers[index] = words;
+        } else {
+            if (cardinality == array.length) containers[index] = array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+            System.arraycopy(array, position, array, position + 1, cardinality - position);
+            array[position] = low;
+        }
+        cardinalities[index]++;
+    }
+
+    public void remove(int slot) {
+        int index = containerIndex(slot, false);
+        if (index < 0) return;
+        Object container = containers[index];
+        char low = (char) slot;
+
+        if (container instanceof long[] words) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) return;
+            words[low >>> 6] &= ~bit;
+            if (--cardinalities[index] == ARRAY_MAX) containers[index] = toArray(words, ARRAY_MAX);
+        } else {
+            char[] array = (char[]) container;
+            int position = Arrays.binarySearch(array, 0, cardinalities[index], low);
+            if (position < 0) return;
+            System.arraycopy(array, position + 1, array, position, cardinalities[index] - position - 1);
+            cardinalities[index]--;
+        }
+
+        if (cardinalities[index] == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            System.arraycopy(cardinalities, index + 1, cardinalities, index, size - index - 1);
+            containers[--size] = null;
+        }
+    }
+
+    public boolean contains(int slot) {
+        int index = containerIndex(slot, false);
+        if (index < 0) return false;
+
+        char low = (char) slot;
+        if (containers[index] instanceof long[] words) return (words[low >>> 6] & 1L << low) != 0;
+        return Arrays.binarySearch((char[]) containers[index], 0, cardinalities[index], low) >= 0;
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) cardinality += cardinalities[i];
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Smallest slot in the set, or -1 if it is empty.
+     */
+    public int first() {
+        if (size == 0) return -1;
+        int high = keys[0] << 16;
+        if (containers[0] instanceof long[] words) {
+            for (int word = 0; ; word++)
+                if (words[word] != 0) return high | word << 6 | Long.numberOfTrailingZeros(words[word]);
+        }
+        return high | ((char[]) containers[0])[0];
+    }
+
+    /**
+     * Slots in ascending order.
+     */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            if (containers[i] instanceof long[] words) {
+                for (int word = 0; word < WORDS; word++) {
+                    for (long bits = words[word]; bits != 0; bits &= bits - 1)
+                        result[count++] = high | word << 6 | Long.numberOfTrailingZeros(bits);
+                }
+            } else {
+                char[] array = (char[]) containers[i];
+                for (int j = 0; j < cardinalities[i]; j++) result[count++] = high | array[j];
+            }
+        }
+        return result;
+    }
+
+    public static Bitmap and(Bitmap a, Bitmap b) {
+        Bitmap result = new Bitmap();
+        for (int i = 0, j = 0; i < a.size && j < b.size; ) {
+            if (a.keys[i] < b.keys[j]) i++;
+            else if (a.keys[i] > b.keys[j]) j++;
+            else {
+                Object container = a.containers[i], other = b.containers[j];
+                if (container instanceof long[] words && other instanceof long[] otherWords) {
+                    long[] and = new long[WORDS];
+                    for (int word = 0; word < WORDS; word++) and[word] = words[word] & otherWords[word];
+                    result.append(a.keys[i], and);
+                } else if (container instanceof char[] array) {
+                    result.append(a.keys[i], filter(array, a.cardinalities[i], b, j, true));
+                } else {
+                    result.append(a.keys[i], filter((char[]) other, b.cardinalities[j], a, i, true));
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of slots in both, without building the intersection.
+     */
+    public static int andCardinality(Bitmap a, Bitmap b) {
+        int cardinality = 0;
+        for (int i = 0, j = 0; i < a.size && j < b.size; ) {
+            if (a.keys[i] < b.keys[j]) i++;
+            else if (a.keys[i] > b.keys[j]) j++;
+            else {
+                Object container = a.containers[i], other = b.containers[j];
+                if (container instanceof long[] words && other instanceof long[] otherWords) {
+                    for (int word = 0; word < WORDS; word++) cardinality += Long.bitCount(words[word] & otherWords[word]);
+                } else if (container instanceof char[] array) {
+                    for (int k = 0; k < a.cardinalities[i]; k++) if (b.containsLow(j, array[k])) cardinality++;
+                } else {
+                    char[] array = (char[]) other;
+                    for (int k = 0; k < b.cardinalities[j]; k++) if (a.containsLow(i, array[k])) cardinality++;
+                }
+                i++;
+                j++;
+            }
+        }
+        return cardinality;
+    }
+
+    public static Bitmap or(Bitmap a, Bitmap b) {
+        Bitmap result = new Bitmap();
+        int i = 0, j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.copy(i));
+                i++;
+            } else if (i == a.size || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.copy(j));
+                j++;
+            } else {
+                long[] words = a.containers[i] instanceof long[] aWords ? aWords.clone() : toWords((char[]) a.containers[i], a.cardinalities[i]);
+                if (b.containers[j] instanceof long[] bWords) {
+                    for (int word = 0; word < WORDS; word++) words[word] |= bWords[word];
+                } else {
+                    char[] array = (char[]) b.containers[j];
+                    for (int k = 0; k < b.cardinalities[j]; k++) words[array[k] >>> 6] |= 1L << array[k];
+                }
+                result.append(a.keys[i], words);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public static Bitmap andNot(Bitmap a, Bitmap b) {
+        Bitmap result = new Bitmap();
+        for (int i = 0, j = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) j++;
+            if (j == b.size || b.keys[j] != a.keys[i]) {
+                result.append(a.keys[i], a.copy(i));
+            } else if (a.containers[i] instanceof long[] words && b.containers[j] instanceof long[] otherWords) {
+                long[] andNot = new long[WORDS];
+                for (int word = 0; word < WORDS; word++) andNot[word] = words[word] & ~otherWords[word];
+                result.append(a.keys[i], andNot);
+            } else if (a.containers[i] instanceof char[] array) {
+                result.append(a.keys[i], filter(array, a.cardinalities[i], b, j, false));
+            } else {
+                long[] words = ((long[]) a.containers[i]).clone();
+                char[] array = (char[]) b.containers[j];
+                for (int k = 0; k < b.cardinalities[j]; k++) words[array[k] >>> 6] &= ~(1L << array[k]);
+                result.append(a.keys[i], words);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The values of the array that are (or with keep false, are not) in the container of other at the given index.
+     */
+    private static char[] filter(char[] array, int cardinality, Bitmap other, int index, boolean keep) {
+        char[] result = new char[cardinality];
+        int count = 0;
+        for (int k = 0; k < cardinality; k++)
+            if (other.containsLow(index, array[k]) == keep) result[count++] = array[k];
+        return Arrays.copyOf(result, count);
+    }
+
+    private boolean containsLow(int index, char low) {
+        if (containers[index] instanceof long[] words) return (words[low >>> 6] & 1L << low) != 0;
+        return Arrays.binarySearch((char[]) containers[index], 0, cardinalities[index], low) >= 0;
+    }
+
+    private Object copy(int index) {
+        return containers[index] instanceof long[] words ? words.clone() : Arrays.copyOf((char[]) containers[index], cardinalities[index]);
+    }
+
+    /**
+     * Adds a container after the last one, in the form that suits its cardinality. Empty containers are dropped.
+     */
+    private void append(char key, Object container) {
+        int cardinality;
+        if (container instanceof long[] words) {
+            cardinality = 0;
+            for (long word : words) cardinality += Long.bitCount(word);
+            if (cardinality <= ARRAY_MAX) container = toArray(words, cardinality);
+        } else {
+            cardinality = ((char[]) container).length;
+        }
+        if (cardinality == 0) return;
+
+        grow();
+        keys[size] = key;
+        containers[size] = container;
+        cardinalities[size] = cardinality;
+        size++;
+    }
+
+    private int containerIndex(int slot, boolean create) {
+        char key = (char) (slot >>> 16);
+        int index = size > 0 && keys[size - 1] == key ? size - 1 : Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0 || !create) return index;
+
+        index = -index - 1;
+        grow();
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = new char[4];
+        cardinalities[index] = 0;
+        size++;
+        return index;
+    }
+
+    private void grow() {
+        if (size < keys.length) return;
+        keys = Arrays.copyOf(keys, size * 2);
+        containers = Arrays.copyOf(containers, size * 2);
+        cardinalities = Arrays.copyOf(cardinalities, size * 2);
+    }
+
+    private static long[] toWords(char[] array, int cardinality) {
+        long[] words = new long[WORDS];
+        for (int k = 0; k < cardinality; k++) words[array[k] >>> 6] |= 1L << array[k];
+        return words;
+    }
+
+    private static char[] toArray(long[] words, int cardinality) {
+        char[] array = new char[cardinality];
+        int count = 0;
+        for (int word = 0; word < WORDS; word++) {
+            for (long bits = words[word]; bits != 0; bits &= bits - 1)
+                array[count++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+        }
+        return array;
+    }
+}
@@ -1,3 +1,4 @@
+import java.text.CollationKey;
 import java.util.*;
 import java.util.concurrent.CancellationException;
 
@@ -36,8 +37,17 @@ public class Cemetery {
 
     private String name, id;
 
+    /**
+     * Turkish match and sort keys of the name, computed whenever the name is set.
+     */
+    private String nameKey;
+
+    private CollationKey nameSortKey;
+
     public int count;
 
+    private boolean dirty;
+
     public final int CAPACITY = 20000;
 
     public static final List<ConsoleReader.Question> QUESTIONS = List.of(
@@ -47,7 +57,7 @@ public class Cemetery {
 
     Cemetery(String id, String name, Address address) {
         this.address = address;
-        this.name = name;
+        setNameKeys(name);
         this.id = id;
         this.count = 0;
     }
@@ -58,7 +68,7 @@ public class Cemetery {
             System.out.println("ID already exists. Please enter a different ID.");
         }
         this.id = id;
-        this.name = reader.getAnswer(QUESTIONS.get(1));
+        setNameKeys(reader.getAnswer(QUESTIONS.get(1)));
         this.address = new Address(reader);
     }
 
@@ -67,10 +77,17 @@ public class Cemetery {
 
         address.edit(reader);
 
-        this.name = name.isBlank() ? this.name : name;
+        setNameKeys(name.isBlank() ? this.name : name);
+        this.dirty = true;
     }
 
-    public void connect(Map<String, Person> people) {
+    public void copyFrom(Cemetery cemetery) {
+        setNameKeys(cemetery.name);
+        this.address = cemetery.address;
+        this.dirty = true;
+    }
+
+    public void connect(PersonStore people) {
         for (Person person : people.values()) {
             if (person.getCemetery() != null && person.getCemetery().getId().equals(this.getId())) {
                 person.setCemetery(this);
@@ -79,6 +96,8 @@ public class Cemetery {
     }
 
     public void addVisitor(Person visitedPerson, Person visitorPerson, Date date) {
+        if (visitedPerson.getShard() != null)
+            visitedPerson.getShard().getRegistry().of(this).markDirty();
         if (visitorList.containsKey(visitedPerson)) {
             SortedSet<Visit> visits = visitorList.get(visitedPerson);
             visits.add(new Visit(visitorPerson, date));
@@ -115,6 +134,11 @@ public class Cemetery {
 
         Map<String, Integer> deathCauses = new LinkedHashMap<>();
 
+        // Death causes are counted by dictionary code, in the order they are first seen
+        int[] causeCounts = new int[Person.DEATH_CAUSES.size()];
+        List<Integer> causes = new ArrayList<>();
+        int male = Person.SEXES.find("Male"), female = Person.SEXES.find("Female");
+
         double sumOfAges = 0;
         double maleCount = 0;
         double femaleCount = 0;
@@ -124,22 +148,21 @@ public class Cemetery {
         for (Person person = personIterator.next(); personIterator.hasNext(); person = personIterator.next()) {
             if (person.dead && person.getCemetery() != null && person.getCemetery().getId().equals(this.getId())) {
                 sumOfAges += person.getAge();
-                if (person.getSex().equals("Male"))
+                if (person.getSexCode() == male)
                     maleCount++;
-                else if (person.getSex().equals("Female"))
+                else if (person.getSexCode() == female)
                     femaleCount++;
-                if (!person.getDeathCause().isBlank()) {
-                    if (deathCauses.containsKey(person.getDeathCause())) {
-                        deathCauses.put(person.getDeathCause(), deathCauses.get(person.getDeathCause()) + 1);
-                        deathCount++;
-                    } else {
-                        deathCauses.put(person.getDeathCause(), 1);
-                        deathCount++;
-                    }
+                int cause = person.getDeathCauseCode();
+                if (cause != StringPool.NONE && !Person.DEATH_CAUSES.value(cause).isBlank()) {
+                    if (causeCounts[cause]++ == 0) causes.add(cause);
+                    deathCount++;
                 }
             }
         }
 
+        for (int cause : causes)
+            deathCauses.put(Person.DEATH_CAUSES.value(cause), causeCounts[cause]);
+
         deathCauses = sortByValue(deathCauses);
 
         result += String.format("%-28s : %.2f\n", "Average age", sumOfAges / count);
@@ -199,15 +222,15 @@ public class Cemetery {
     public boolean matches(Cemetery filter) {
         if (filter == null) return true;
         if (filter.id != null && !filter.id.equals(this.id)) return false;
-        if (filter.name != null && !filter.name.equalsIgnoreCase(this.name)) return false;
+        if (filter.nameKey != null && !filter.nameKey.equals(this.nameKey)) return false;
         if (filter.address != null && !this.address.matches(filter.address)) return false;
         return true;
     }
 
     public static Comparator<? super Cemetery> getComparator(String sortBy) {
         if (sortBy.equalsIgnoreCase("id")) return Comparator.comparing(Cemetery::getId);
-        if (sortBy.equalsIgnoreCase("name")) return Comparator.comparing(Cemetery::getName);
-        if (sortBy.equalsIgnoreCase("address")) return Comparator.comparing(Cemetery::getAddressStringReverse);
+        if (sortBy.equalsIgnoreCase("name")) return Comparator.comparing(cemetery -> cemetery.nameSortKey, Comparator.nullsFirst(Comparator.naturalOrder()));
+        if (sortBy.equalsIgnoreCase("address")) return Comparator.comparing(Cemetery::getAddress, Address.order());
         if (sortBy.equalsIgnoreCase("ratio")) return Comparator.comparing(Cemetery::getRatio);
         return Comparator.comparing(Cemetery::getId);
     }
@@ -220,28 +243,42 @@ public class Cemetery {
         return address;
     }
 
-    public void setAddress(Address address) {
+    /**
+     * The cemetery is filed under its address by Cemetree, which refiles it in cemeteryEdited after a change.
+     */
+    void setAddress(Address address) {
         this.address = address;
-    }
-
-    private String getAddressStringReverse() {
-        return address.toStringReverse();
+        this.dirty = true;
     }
 
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
+    /**
+     * The cemetery is filed under its name by Cemetree, which refiles it in cemeteryEdited after a change.
+     */
+    void setName(String name) {
+        setNameKeys(name);
+        this.dirty = true;
+    }
+
+    private void setNameKeys(String name) {
         this.name = name;
+        this.nameKey = name == null ? null : Collation.matchKey(name);
+        this.nameSortKey = name == null ? null : Collation.sortKey(name);
     }
 
     public String getId() {
         return id;
     }
 
-    public void setId(String id) {
+    /**
+     * The cemetery is kept under its ID by Cemetree, which does not follow a change.
+     */
+    void setId(String id) {
         this.id = id;
+        this.dirty = true;
     }
 
     public int getCount() {
@@ -259,4 +296,12 @@ public class Cemetery {
     public void decrementCount() {
         count--;
     }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
 }
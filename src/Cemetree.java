@@ -1,9 +1,27 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 public class Cemetree {
-    private record PersonRelationship(Person person, String relationship) {
+    private record PendingFile(Path path, List<String> lines) {
+    }
+
+    private record SaveBatch(List<PendingFile> files, List<Shard> shards, boolean cemeteries, Path journalSegment) {
+    }
+
+    private record VisitRow(Cemetery cemetery, Person visitedPerson, Person visitorPerson, Date time) {
     }
 
     private record ConsoleCommand(String command, String description, String[] args) {
@@ -26,15 +44,51 @@ public class Cemetree {
         }
     }
 
-    private final Map<String, Person> people = new HashMap<>();
+    private final PersonStore people = new PersonStore();
 
     private final Map<String, Cemetery> cemeteries = new HashMap<>();
 
-    private final String[] PERSON_FILTER = {"id", "name", "surname", "sex", "birth_date", "death_date", "start_date", "end_date", "death_cause", "cemetery_id", "sort_by"};
+    private final PrefixIndex<Cemetery> cemeteryNames = new PrefixIndex<>();
+
+    private final SpatialIndex<Cemetery> cemeteryPlaces = new SpatialIndex<>();
+
+    private final RegionIndex cemeteryRegions = new RegionIndex();
+
+    private Journal journal;
+
+    private final Shard.Registry shards = new Shard.Registry();
+
+    private boolean cemeteriesDirty;
+
+    /**
+     * Held while a command runs and while the background save captures the changed data.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private ScheduledExecutorService saver;
+
+    /**
+     * Number of closest people a fuzzy search shows.
+     */
+    private static final int FUZZY_LIMIT = 20;
+
+    /**
+     * Number of completions suggest shows for each prefix.
+     */
+    private static final int SUGGEST_LIMIT = 10;
+
+    /**
+     * Number of cemeteries a search near a place shows when neither radius nor k is given.
+     */
+    private static final int NEAR_LIMIT = 10;
+
+    private final String[] PERSON_FILTER = {"id", "name", "surname", "sex", "birth_date", "death_date", "start_date", "end_date", "alive_on", "lived_between", "death_cause", "cemetery_id", "sort_by"};
+
+    private final String[] RELATIVE_FILTER = {"interval", "relation", "id", "name", "surname", "sex", "birth_date", "death_date", "start_date", "end_date", "alive_on", "lived_between", "death_cause", "cemetery_id", "sort_by"};
 
-    private final String[] RELATIVE_FILTER = {"interval", "id", "name", "surname", "sex", "birth_date", "death_date", "start_date", "end_date", "death_cause", "cemetery_id", "sort_by"};
+    private final String[] CEMETERY_FILTER = {"id", "name", "country", "city", "district", "neighbourhood", "street", "latitude", "longitude", "near", "radius", "k", "sort_by"};
 
-    private final String[] CEMETERY_FILTER = {"id", "name", "country", "city", "district", "neighbourhood", "street", "latitude", "longitude", "sort_by"};
+    private final String[] REGION_FILTER = {"country", "city", "district", "neighbourhood"};
 
     private final Map<String, ConsoleCommand> HELP = new LinkedHashMap<>(21) {{
         put("add person", new ConsoleCommand("add person", "Adds a new person", PERSON_FILTER));
@@ -44,14 +98,17 @@ public class Cemetree {
         put("set alive", new ConsoleCommand("set alive", "Changes a person's status to alive", PERSON_FILTER));
         put("set admin", new ConsoleCommand("set admin", "Changes a person's admin status", PERSON_FILTER));
         put("set user", new ConsoleCommand("set user", "Changes a person's admin status", PERSON_FILTER));
-        put("search person", new ConsoleCommand("search person", "Searches for a person (Use \"include alive\" flag to include alive people at search)", PERSON_FILTER));
-        put("search relatives", new ConsoleCommand("search relatives", "Searches for relatives", RELATIVE_FILTER));
+        put("search person", new ConsoleCommand("search person", "Searches for a person (Use \"include alive\" flag to include alive people at search, \"fuzzy\" flag to find the closest names and surnames)", PERSON_FILTER));
+        put("search relatives", new ConsoleCommand("search relatives", "Searches for relatives (relation=<r> limits them to ancestor, descendant, sibling, aunt_uncle, niece_nephew, cousin, spouse or in_law, several separated by commas)", RELATIVE_FILTER));
+        put("relationship between", new ConsoleCommand("relationship between", "Shows the shortest chain of parents, children and spouses from the first person to the second and names the relation (first defaults to you)", new String[]{"first", "second"}));
+        put("suggest", new ConsoleCommand("suggest", "Suggests names, surnames or cemetery names starting with <n>, <s> or <c> (A value ending with * searches by prefix)", new String[]{"name", "surname", "cemetery"}));
 
         put("add cemetery", new ConsoleCommand("add cemetery", "Adds a new cemetery", new String[]{}));
         put("remove cemetery", new ConsoleCommand("remove cemetery", "Removes a cemetery", CEMETERY_FILTER));
         put("edit cemetery", new ConsoleCommand("edit cemetery", "Edits a cemetery", CEMETERY_FILTER));
-        put("search cemetery", new ConsoleCommand("search cemetery", "Searches for a cemetery", CEMETERY_FILTER));
+        put("search cemetery", new ConsoleCommand("search cemetery", "Searches for a cemetery (near=<latitude>,<longitude> finds the closest ones, radius=<km> the ones within it, k=<count> the given number of closest ones)", CEMETERY_FILTER));
         put("show statistics", new ConsoleCommand("show statistics", "Shows statistics (Use \"group\" flag to show statistics of all selected cemeteries)", CEMETERY_FILTER));
+        put("list regions", new ConsoleCommand("list regions", "Lists the regions one level below the given one with their number of cemeteries and burials", REGION_FILTER));
 
         put("view", new ConsoleCommand("view", "Views details of a person or cemetery (Use \"view person\" or \"view cemetery\" to view corresponding details)", new String[]{"number"}));
 
@@ -65,194 +122,506 @@ public class Cemetree {
         put("exit", new ConsoleCommand("exit", "Exits the program", new String[]{}));
     }};
 
+    /**
+     * Saves the cemeteries and every dirty shard. People and visits of a shard go to
+     * fileName_people_KEY.csv and fileName_visitors_KEY.csv, shards that did not change are not rewritten.
+     */
     public void saveToFile(String fileName) throws IOException {
-        // Save cemeteries
-        BufferedWriter cemeteryWriter = new BufferedWriter(new FileWriter(fileName + "_cemeteries.csv"));
+        save(fileName, true);
+    }
 
-        cemeteryWriter.write(Cemetery.toCsvHeader() + "\n");
-        for (Cemetery cemetery : cemeteries.values())
-            cemeteryWriter.write(cemetery.toCsvString() + "\n");
-        cemeteryWriter.close();
+    /**
+     * Starts a daemon thread that saves the changed shards every interval while the console keeps running.
+     */
+    public void startBackgroundSave(String fileName, long intervalSeconds) {
+        saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "background-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        saver.scheduleWithFixedDelay(() -> {
+            try {
+                save(fileName, false);
+            } catch (IOException e) {
+                System.out.println("Background save failed: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
 
-        // Save people
-        BufferedWriter peopleWriter = new BufferedWriter(new FileWriter(fileName + "_people.csv"));
+    /**
+     * Stops the background thread and saves the changes made since its last run.
+     */
+    public void stopBackgroundSave(String fileName) throws IOException {
+        if (saver != null) {
+            saver.shutdown();
+            try {
+                saver.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            saver = null;
+        }
+        saveToFile(fileName);
+    }
+
+    /**
+     * Captures the changed files while holding the state lock, then writes them without it.
+     * Every file is written to a temporary file, synced and moved over the old one, so a crash never leaves a truncated file.
+     * The journal is rotated at capture time and the rotated part is deleted once the files are written.
+     */
+    private void save(String fileName, boolean wait) throws IOException {
+        SaveBatch batch;
+
+        if (wait) {
+            lock.lock();
+        } else if (!lock.tryLock()) {
+            // A command is running, try again on the next run
+            return;
+        }
+
+        try {
+            batch = captureChanges(fileName);
+            if (batch.files.isEmpty()) return;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            // A deleted shard leaves no newer file behind, so the snapshot goes before any file changes and is only
+            // trusted again once it is written after the save
+            Files.deleteIfExists(Path.of(Snapshot.fileName(fileName)));
+            for (PendingFile file : batch.files) {
+                if (file.lines == null)
+                    Files.deleteIfExists(file.path);
+                else
+                    writeAtomically(file.path, file.lines);
+            }
+            if (batch.journalSegment != null) Journal.deleteSegments(fileName, batch.journalSegment);
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                for (Shard shard : batch.shards) shard.markDirty();
+                cemeteriesDirty |= batch.cemeteries;
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private SaveBatch captureChanges(String fileName) throws IOException {
+        List<PendingFile> files = new ArrayList<>();
+        List<Shard> savedShards = new ArrayList<>();
 
-        // Sort people by birthdate
-        List<Person> peopleList = new ArrayList<>(people.values());
-        peopleList.sort(Person::compareTo);
+        // Save cemeteries
+        for (Cemetery cemetery : cemeteries.values())
+            cemeteriesDirty |= cemetery.isDirty();
 
-        peopleWriter.write(Person.toCsvHeader() + "\n");
-        for (Person person : peopleList) {
-            peopleWriter.write(person.toCsvString() + "\n");
+        boolean saveCemeteries = cemeteriesDirty || !new File(fileName + "_cemeteries.csv").exists();
+        if (saveCemeteries) {
+            List<String> lines = new ArrayList<>();
+            lines.add(Cemetery.toCsvHeader());
+            for (Cemetery cemetery : cemeteries.values()) {
+                lines.add(cemetery.toCsvString());
+                cemetery.setDirty(false);
+            }
+            files.add(new PendingFile(Path.of(fileName + "_cemeteries.csv"), lines));
+            cemeteriesDirty = false;
         }
-        peopleWriter.close();
 
-        // Save visitors
-        BufferedWriter visitorWriter = new BufferedWriter(new FileWriter(fileName + "_visitors.csv"));
+        for (Shard shard : shards.getShards()) {
+            if (shard.isDirty()) {
+                captureShard(fileName, shard, files);
+                savedShards.add(shard);
+                shard.setDirty(false);
+            }
+        }
 
-        visitorWriter.write("cemeteryId,visitedId,visitorId,time\n");
+        if (files.isEmpty()) return new SaveBatch(files, savedShards, false, null);
+
+        // The single file layout is replaced by the shards
+        files.add(new PendingFile(Path.of(fileName + "_people.csv"), null));
+        files.add(new PendingFile(Path.of(fileName + "_visitors.csv"), null));
+
+        Path journalSegment = journal == null ? null : journal.rotate();
+        return new SaveBatch(files, savedShards, saveCemeteries, journalSegment);
+    }
+
+    private void captureShard(String fileName, Shard shard, List<PendingFile> files) {
+        Path peopleFile = Path.of(fileName + "_people_" + shard.getKey() + ".csv");
+        Path visitorFile = Path.of(fileName + "_visitors_" + shard.getKey() + ".csv");
+
+        // Save people
+        if (shard.getPeople().isEmpty()) {
+            files.add(new PendingFile(peopleFile, null));
+        } else {
+            // Sort people by birthdate
+            List<Person> peopleList = new ArrayList<>(shard.getPeople());
+            peopleList.sort(Person::compareTo);
+
+            List<String> lines = new ArrayList<>(peopleList.size() + 1);
+            lines.add(Person.toCsvHeader());
+            for (Person person : peopleList) {
+                lines.add(person.toCsvString());
+            }
+            files.add(new PendingFile(peopleFile, lines));
+        }
+
+        // Save visitors of the cemeteries in this shard
+        List<String> visits = new ArrayList<>();
+        visits.add("cemeteryId,visitedId,visitorId,time");
         for (Cemetery cemetery : cemeteries.values()) {
-            Map<Person, SortedSet<Cemetery.Visit>> visitorList = cemetery.getVisitorList();
+            if (!Shard.keyOf(cemetery).equals(shard.getKey())) continue;
 
-            for (Map.Entry<Person, SortedSet<Cemetery.Visit>> entry : visitorList.entrySet()) {
+            for (Map.Entry<Person, SortedSet<Cemetery.Visit>> entry : cemetery.getVisitorList().entrySet()) {
                 for (Cemetery.Visit visit : entry.getValue()) {
-                    visitorWriter.write(String.format("%s,%s,%s,%s",
+                    visits.add(String.format("%s,%s,%s,%s",
                             cemetery.getId(),
                             entry.getKey().getId(),
                             visit.getPerson().getId(),
                             visit.getDate().toStringCLK()
                     ));
-                    visitorWriter.write("\n");
                 }
             }
         }
-        visitorWriter.close();
+
+        files.add(new PendingFile(visitorFile, visits.size() == 1 ? null : visits));
     }
 
-    public void loadFromFile(String fileName) throws IOException {
-        String line;
+    private static void writeAtomically(Path path, List<String> lines) throws IOException {
+        Path temp = Path.of(path + ".tmp");
 
-        if (!new File(fileName + "_cemeteries.csv").exists()) {
-            System.out.println("File not found: " + fileName + "_cemeteries.csv");
-            throw new IOException("File not found: " + fileName + "_cemeteries.csv");
-        } else if (!new File(fileName + "_people.csv").exists()) {
-            System.out.println("File not found: " + fileName + "_people.csv");
-            throw new IOException("File not found: " + fileName + "_people.csv");
-        } else if (!new File(fileName + "_visitors.csv").exists()) {
-            System.out.println("File not found: " + fileName + "_visitors.csv");
-            throw new IOException("File not found: " + fileName + "_visitors.csv");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 1 << 16);
+            for (String line : lines) {
+                writer.write(line);
+                writer.write("\n");
+            }
+            writer.flush();
+            channel.force(true);
         }
 
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-        // Load cemeteries
-        BufferedReader cemeteryReader = new BufferedReader(new FileReader(fileName + "_cemeteries.csv"));
-        cemeteryReader.readLine();
+    /**
+     * Returns the shard files of the given kind ("people" or "visitors"), sorted by name.
+     */
+    private static List<File> shardFiles(String fileName, String kind) {
+        File base = new File(fileName).getAbsoluteFile();
+        String prefix = base.getName() + "_" + kind + "_";
 
-        while ((line = cemeteryReader.readLine()) != null) {
-            String[] data = line.split(",", -1);
-            Address address = new Address(data[2], data[3], data[4], data[5], data[6], Double.parseDouble(data[7]), Double.parseDouble(data[8]));
-            Cemetery cemetery = new Cemetery(data[0], data[1], address);
-            cemeteries.put(cemetery.getId(), cemetery);
-        }
-        cemeteryReader.close();
+        File[] files = base.getParentFile().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".csv"));
+        List<File> result = files == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(files));
+        result.sort(Comparator.comparing(File::getName));
+        return result;
+    }
 
-        // Load people
-        BufferedReader peopleReader = new BufferedReader(new FileReader(fileName + "_people.csv"));
-        peopleReader.readLine();
+    private void addPerson(Person person) {
+        people.put(person);
+        person.connect(people);
+        shards.add(person);
+    }
 
-        while ((line = peopleReader.readLine()) != null) {
-            String[] data = line.split(",", -1);
-            Cemetery cemetery = cemeteries.get(data[7]);
+    private void removePerson(Person person) {
+        person.removeConnections();
+        people.remove(person);
+        shards.remove(person);
+    }
 
-            Person person = new Person(data[0], data[1], data[2], data[3], !data[4].equals("0"), !data[5].equals("0"), data[6],
-                    cemetery,
-                    !data[8].isBlank() ? new Date(data[8]) : null,
-                    !data[9].isBlank() ? new Date(data[9]) : null,
-                    data[10].isBlank() ? null : data[10],
-                    data[11].isBlank() ? null : data[11],
-                    data.length == 13 ? data[12] : null
-            );
+    private void addCemetery(Cemetery cemetery) {
+        cemeteries.put(cemetery.getId(), cemetery);
+        indexCemetery(cemetery);
+        cemetery.connect(people);
+        cemeteriesDirty = true;
+    }
 
-            // Connect person to parents, spouse, children and cemetery
-            person.connect(people);
-        }
-        peopleReader.close();
+    private void removeCemetery(Cemetery cemetery) {
+        cemeteries.remove(cemetery.getId());
+        unindexCemetery(cemetery, cemetery.getName());
+        shards.of(cemetery).markDirty();
+        cemeteriesDirty = true;
+    }
 
-        // Load visitors
-        BufferedReader visitorReader = new BufferedReader(new FileReader(fileName + "_visitors.csv"));
-        visitorReader.readLine();
+    /**
+     * Replays the changes left in the journal on top of the loaded data, then starts journaling new changes.
+     */
+    public void openJournal(String fileName) throws IOException {
+        Journal.replay(fileName, data -> {
+            try {
+                applyJournalRecord(data);
+            } catch (RuntimeException e) {
+                System.out.println("Skipping invalid journal record: " + e);
+            }
+        });
+        journal = new Journal(fileName);
+    }
+
+    public void closeJournal() throws IOException {
+        if (journal != null) journal.close();
+        journal = null;
+    }
 
-        while ((line = visitorReader.readLine()) != null) {
-            String[] data = line.split(",", -1);
-            Cemetery cemetery = cemeteries.get(data[0]);
-            Person visitedPerson = people.get(data[1]);
-            Person visitorPerson = people.get(data[2]);
-            Date time = new Date(data[3], true);
+    private void log(String operation, String record) {
+        if (journal != null) journal.append(operation, record);
+    }
 
-            if (cemetery != null && visitedPerson != null && visitorPerson != null) {
-                cemetery.addVisitor(visitedPerson, visitorPerson, time);
+    private void applyJournalRecord(CsvTokenizer data) {
+        String operation = data.nextString();
+
+        switch (operation) {
+            case "add person", "edit person" -> {
+                // A record can be replayed over files that already contain it, so an add of a known person is an edit
+                Person edited = parsePerson(data);
+                Person person = people.get(edited.getIdKey());
+                if (person != null) {
+                    person.removeConnections();
+                    person.copyFrom(edited);
+                    person.connect(people);
+                } else {
+                    addPerson(edited);
+                }
+            }
+            case "set dead" -> {
+                Person dead = parsePerson(data);
+                Person person = people.get(dead.getIdKey());
+                // A replayed record finds the person already buried there, counting the burial again would fill the cemetery
+                if (person == null || person.isDead() && person.getCemetery() == dead.getCemetery()) return;
+
+                // Taken out of an earlier cemetery first, so its count goes down before the new one goes up
+                if (person.isDead()) person.setAlive();
+                person.setDead(dead.getDeathDate(), dead.getDeathCause(), dead.getCemetery());
             }
+            case "set alive", "set admin", "set user", "remove person" -> {
+                Person person = people.get(data.nextId());
+                if (person == null) return;
+
+                switch (operation) {
+                    case "set alive" -> person.setAlive();
+                    case "set admin" -> person.setAdmin(true);
+                    case "set user" -> person.setAdmin(false);
+                    default -> removePerson(person);
+                }
+            }
+            case "add cemetery", "edit cemetery" -> {
+                Cemetery edited = parseCemetery(data);
+                Cemetery cemetery = cemeteries.get(edited.getId());
+                if (cemetery != null) {
+                    String name = cemetery.getName();
+                    cemetery.copyFrom(edited);
+                    cemeteryEdited(cemetery, name);
+                } else
+                    addCemetery(edited);
+            }
+            case "remove cemetery" -> {
+                Cemetery cemetery = cemeteries.get(data.nextString());
+                if (cemetery != null) removeCemetery(cemetery);
+            }
+            case "visit" -> addVisit(parseVisit(data));
+            default -> System.out.println("Unknown journal record: " + operation);
         }
-        visitorReader.close();
     }
 
-    public List<Person> searchPeopleByFilter(Person filter, boolean includeAlive) {
-        List<Person> result = new ArrayList<>();
+    public void saveSnapshot(String fileName) throws IOException {
+        lock.lock();
+        try {
+            Snapshot.write(fileName, cemeteries, people);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        if (filter != null) {
-            for (Person person : people.values()) {
-                if (person.matches(filter) && (includeAlive || person.isDead()))
-                    result.add(person);
-            }
+    public void loadSnapshot(String fileName) throws IOException {
+        people.beginLoad();
+        try {
+            Snapshot.read(fileName, cemeteries, people);
+        } finally {
+            people.endLoad();
         }
-        return result;
+        for (Cemetery cemetery : cemeteries.values())
+            indexCemetery(cemetery);
+
+        for (Person person : people.values())
+            shards.add(person);
+        // Until the shard files are written for the first time every shard has to be saved
+        shards.setDirty(shardFiles(fileName, "people").isEmpty());
     }
 
-    public List<Cemetery> searchCemeteriesByFilter(Cemetery filter) {
-        List<Cemetery> result = new ArrayList<>();
-        if (filter != null) {
-            for (Cemetery cemetery : cemeteries.values()) {
-                if (cemetery.matches(filter))
-                    result.add(cemetery);
-            }
+    /**
+     * Returns true if a binary snapshot exists and is not older than any of the CSV files.
+     * Saving deletes the snapshot, so one that is left was written after the last save.
+     */
+    public boolean hasSnapshot(String fileName) {
+        File snapshot = new File(Snapshot.fileName(fileName));
+        if (!snapshot.exists()) return false;
+
+        List<File> files = new ArrayList<>();
+        for (String suffix : new String[]{"_cemeteries.csv", "_people.csv", "_visitors.csv"})
+            files.add(new File(fileName + suffix));
+        files.addAll(shardFiles(fileName, "people"));
+        files.addAll(shardFiles(fileName, "visitors"));
+
+        for (File csv : files) {
+            if (csv.exists() && csv.lastModified() > snapshot.lastModified()) return false;
         }
-        return result;
+        return true;
     }
 
-    public List<Person> searchPeopleByDate(List<Person> searchList, Date startDate, Date endDate) {
-        List<Person> result = new ArrayList<>();
+    public void loadFromFile(String fileName) throws IOException {
+        loadFromFile(fileName, false);
+    }
 
-        if (startDate != null && endDate != null) {
-            for (Person person : searchList) {
-                if (person.getDeathDate() != null && person.getDeathDate().after(startDate) && person.getDeathDate().before(endDate)) {
-                    result.add(person);
-                }
+    public void loadFromFile(String fileName, boolean parallel) throws IOException {
+        List<File> peopleFiles = shardFiles(fileName, "people");
+        List<File> visitorFiles = shardFiles(fileName, "visitors");
+        boolean sharded = !peopleFiles.isEmpty();
+
+        if (!sharded) {
+            peopleFiles = List.of(new File(fileName + "_people.csv"));
+            visitorFiles = List.of(new File(fileName + "_visitors.csv"));
+        }
+
+        List<File> files = new ArrayList<>();
+        files.add(new File(fileName + "_cemeteries.csv"));
+        files.addAll(peopleFiles);
+        files.addAll(visitorFiles);
+
+        for (File file : files) {
+            if (!file.exists()) {
+                System.out.println("File not found: " + file.getPath());
+                throw new IOException("File not found: " + file.getPath());
             }
         }
 
-        return result;
+        // Rows are parsed chunk by chunk, then merged in file order so the result does not depend on the mode
+        for (Cemetery cemetery : CsvLoader.load(fileName + "_cemeteries.csv", this::parseCemetery, parallel)) {
+            cemeteries.put(cemetery.getId(), cemetery);
+            indexCemetery(cemetery);
+        }
+
+        List<Person> peopleList = new ArrayList<>();
+        for (File file : peopleFiles)
+            peopleList.addAll(CsvLoader.load(file.getPath(), this::parsePerson, parallel));
+
+        // Shards are sorted by birthdate on their own, merge them so parents are still connected before their children
+        if (sharded)
+            peopleList.sort(Person::compareTo);
+
+        // Connect people to parents, spouse, children and cemetery
+        people.beginLoad();
+        try {
+            for (Person person : peopleList)
+                person.connect(people);
+        } finally {
+            people.endLoad();
+        }
+
+        for (File file : visitorFiles) {
+            for (VisitRow visit : CsvLoader.load(file.getPath(), this::parseVisit, parallel))
+                addVisit(visit);
+        }
+
+        for (Person person : people.values())
+            shards.add(person);
+        // Until the shard files are written for the first time every shard has to be saved
+        shards.setDirty(!sharded);
     }
 
-    public List<PersonRelationship> searchRelativesRecursive(int generationInterval, Person person) {
-        List<PersonRelationship> result = new ArrayList<>();
-        Stack<Person> childrenStack = new Stack<>();
-        Stack<Person> ancestorsStack = new Stack<>();
-        searchRelativesAncestors(generationInterval, person, ancestorsStack, result, "");
-        searchRelativesChildren(generationInterval, person, childrenStack, result, "");
-        return result;
+    private Cemetery parseCemetery(CsvTokenizer data) {
+        String id = data.nextString();
+        String name = data.nextString();
+        Address address = new Address(data.nextString(), data.nextString(), data.nextString(), data.nextString(), data.nextString(), data.nextDouble(), data.nextDouble());
+        return new Cemetery(id, name, address);
     }
 
-    private void searchRelativesAncestors(int generationInterval, Person person, Stack<Person> ancestorsStack, List<PersonRelationship> result, String relationship) {
-        if (generationInterval > 0) {
-            if (person.getMother() != null) {
-                Person mother = person.getMother();
-                PersonRelationship p = new PersonRelationship(mother, relationship + " Mother (" + person.getName() + " " + person.getSurname() + "' s Mother)");
-                result.add(p);
-                ancestorsStack.push(mother);
-                searchRelativesAncestors(generationInterval - 1, mother, ancestorsStack, result, relationship + " Grand");
-                ancestorsStack.pop();
-            }
-            if (person.getFather() != null) {
-                Person father = person.getFather();
-                PersonRelationship p = new PersonRelationship(father, relationship + " Father (" + person.getName() + " " + person.getSurname() + "' s Father)");
-                result.add(p);
-                ancestorsStack.push(father);
-                searchRelativesAncestors(generationInterval - 1, father, ancestorsStack, result, relationship + " Grand");
-                ancestorsStack.pop();
-            }
+    private Person parsePerson(CsvTokenizer data) {
+        long id = data.nextId();
+        String name = data.nextString();
+        String surname = data.nextString();
+        String sex = data.nextString();
+        boolean admin = data.nextFlag();
+        boolean dead = data.nextFlag();
+        String deathCause = data.nextString();
+        Cemetery cemetery = cemeteries.get(data.nextString());
+
+        return new Person(id, name, surname, sex, admin, dead, deathCause,
+                cemetery,
+                data.nextDate(false),
+                data.nextDate(false),
+                data.nextId(),
+                data.nextId(),
+                data.hasMoreFields() ? data.nextId() : Person.NO_ID
+        );
+    }
+
+    private VisitRow parseVisit(CsvTokenizer data) {
+        Cemetery cemetery = cemeteries.get(data.nextString());
+        Person visitedPerson = people.get(data.nextId());
+        Person visitorPerson = people.get(data.nextId());
+        return new VisitRow(cemetery, visitedPerson, visitorPerson, data.nextDate(true));
+    }
+
+    private void addVisit(VisitRow visit) {
+        if (visit.cemetery != null && visit.visitedPerson != null && visit.visitorPerson != null) {
+            visit.cemetery.addVisitor(visit.visitedPerson, visit.visitorPerson, visit.time);
         }
     }
 
-    private void searchRelativesChildren(int generationInterval, Person person, Stack<Person> childrenStack, List<PersonRelationship> result, String relationship) {
-        if (generationInterval > 0) {
-            for (Person child : person.getChildren()) {
-                childrenStack.push(child);
-                PersonRelationship p = new PersonRelationship(child, relationship + " Child (" + person.getName() + " " + person.getSurname() + "' s Child)");
-                result.add(p);
-                searchRelativesChildren(generationInterval - 1, child, childrenStack, result, relationship + " Grand");
-                childrenStack.pop();
+    public List<Person> searchPeopleByFilter(Person filter, boolean includeAlive) {
+        return searchPeopleByFilter(filter, includeAlive, null, null, null, null);
+    }
+
+    /**
+     * Like searchPeopleByFilter, but when startDate and endDate are given only people who died strictly between them match,
+     * and when livedFrom and livedTo are given only people whose lifespan overlaps that period match.
+     */
+    public List<Person> searchPeopleByFilter(Person filter, boolean includeAlive, Date startDate, Date endDate, Date livedFrom, Date livedTo) {
+        if (filter == null) return new ArrayList<>();
+
+        return people.select(filter, !includeAlive, startDate, endDate, livedFrom, livedTo,
+                person -> matches(person, filter, includeAlive, startDate, endDate, livedFrom, livedTo));
+    }
+
+    private static boolean matches(Person person, Person filter, boolean includeAlive, Date startDate, Date endDate, Date livedFrom, Date livedTo) {
+        boolean dated = startDate != null && endDate != null;
+        boolean lived = livedFrom != null && livedTo != null;
+
+        return person.matches(filter) && (includeAlive || person.isDead())
+                && (!dated || (person.getDeathDate() != null && person.getDeathDate().after(startDate) && person.getDeathDate().before(endDate)))
+                && (!lived || person.livedBetween(livedFrom, livedTo));
+    }
+
+    /**
+     * Looks an ID up directly and an address in the region tree, the cemeteries found there are checked against the whole filter.
+     */
+    public List<Cemetery> searchCemeteriesByFilter(Cemetery filter) {
+        List<Cemetery> result = new ArrayList<>();
+        if (filter != null) {
+            Collection<Cemetery> candidates;
+            if (filter.getId() != null) {
+                Cemetery cemetery = cemeteries.get(filter.getId());
+                candidates = cemetery == null ? List.of() : List.of(cemetery);
+            } else if (filter.getAddress() != null) {
+                candidates = cemeteryRegions.find(filter.getAddress());
+            } else {
+                candidates = cemeteries.values();
+            }
+
+            for (Cemetery cemetery : candidates) {
+                if (cemetery.matches(filter))
+                    result.add(cemetery);
             }
         }
+        return result;
+    }
+
+    /**
+     * Returns the relatives of the person at most generationInterval generations up and down, closest first, see FamilyWalk.
+     * An empty set of relations returns every relation. The relations are only formatted by Relative.label.
+     */
+    public List<FamilyWalk.Relative> searchRelatives(int generationInterval, Person person, Set<FamilyWalk.Relation> relations) {
+        return FamilyWalk.walk(people, person, generationInterval, relations);
     }
 
     public String showStatistics(Cemetery filter) {
@@ -261,39 +630,41 @@ public class Cemetree {
         Map<String, Integer> deathCauses = new LinkedHashMap<>();
         Map<Cemetery, Integer> deathCemeteries = new LinkedHashMap<>();
 
-        double sumOfAges = 0;
-        double maleCount = 0;
-        double femaleCount = 0;
-        double deathCount = 0;
-        double deadCount = 0;
-
-        for (Person person : people.values()) {
-            if (person.dead && person.getCemetery() != null && (filter == null || person.getCemetery().matches(filter))) {
-                sumOfAges += person.getAge();
-                deadCount++;
-
-                if (person.getSex().equals("Male"))
-                    maleCount++;
-                else if (person.getSex().equals("Female"))
-                    femaleCount++;
-
-                if (!person.getDeathCause().isBlank()) {
-                    if (deathCauses.containsKey(person.getDeathCause())) {
-                        deathCauses.put(person.getDeathCause(), deathCauses.get(person.getDeathCause()) + 1);
-                        deathCount++;
-                    } else {
-                        deathCauses.put(person.getDeathCause(), 1);
-                        deathCount++;
-                    }
-                }
+        // The dead buried in the selected cemeteries, every count is an intersection with it
+        Bitmap buried = new Bitmap();
+        Map<Cemetery, Bitmap> buriedByCemetery = new HashMap<>();
+        Map<Cemetery, Bitmap> cemeterySlots = people.cemeterySlots();
+        for (Cemetery cemetery : filter == null ? cemeterySlots.keySet() : searchCemeteriesByFilter(filter)) {
+            Bitmap slots = cemeterySlots.get(cemetery);
+            if (slots == null) continue;
+            Bitmap dead = Bitmap.and(slots, people.deadSlots());
+            if (dead.isEmpty()) continue;
+            buriedByCemetery.put(cemetery, dead);
+            buried = Bitmap.or(buried, dead);
+        }
 
-                if (deathCemeteries.containsKey(person.getCemetery()))
-                    deathCemeteries.put(person.getCemetery(), deathCemeteries.get(person.getCemetery()) + 1);
-                else
-                    deathCemeteries.put(person.getCemetery(), 1);
-            }
+        double sumOfAges = people.sumOfAges(buried);
+        double deathCount = 0;
+        double deadCount = buried.cardinality();
+        double maleCount = count(buried, people.sexSlots(), Person.SEXES.fold(Person.SEXES.find("Male")));
+        double femaleCount = count(buried, people.sexSlots(), Person.SEXES.fold(Person.SEXES.find("Female")));
+
+        // Causes and cemeteries are listed in the order a scan of the people would first see them
+        Map<Integer, Bitmap> causes = new HashMap<>();
+        for (Map.Entry<Integer, Bitmap> entry : people.deathCauseSlots().entrySet()) {
+            if (Person.DEATH_CAUSES.value(entry.getKey()).isBlank()) continue;
+            Bitmap died = Bitmap.and(buried, entry.getValue());
+            if (!died.isEmpty()) causes.put(entry.getKey(), died);
+        }
+        for (int cause : inScanOrder(causes)) {
+            int count = causes.get(cause).cardinality();
+            deathCauses.put(Person.DEATH_CAUSES.value(cause), count);
+            deathCount += count;
         }
 
+        for (Cemetery cemetery : inScanOrder(buriedByCemetery))
+            deathCemeteries.put(cemetery, buriedByCemetery.get(cemetery).cardinality());
+
         deathCauses = Cemetery.sortByValue(deathCauses);
         deathCemeteries = Cemetery.sortByValue(deathCemeteries);
 
@@ -321,6 +692,33 @@ public class Cemetree {
         return result;
     }
 
+    /**
+     * Number of dead people buried in the cemeteries, counted from the bitmaps.
+     */
+    private int burials(List<Cemetery> cemeteries) {
+        Map<Cemetery, Bitmap> cemeterySlots = people.cemeterySlots();
+        int burials = 0;
+        for (Cemetery cemetery : cemeteries) {
+            Bitmap slots = cemeterySlots.get(cemetery);
+            if (slots != null) burials += Bitmap.andCardinality(slots, people.deadSlots());
+        }
+        return burials;
+    }
+
+    private static int count(Bitmap slots, Map<Integer, Bitmap> bitmaps, int key) {
+        Bitmap bitmap = bitmaps.get(key);
+        return bitmap == null ? 0 : Bitmap.andCardinality(slots, bitmap);
+    }
+
+    /**
+     * Keys ordered by the first slot of their bitmap.
+     */
+    private static <K> List<K> inScanOrder(Map<K, Bitmap> bitmaps) {
+        List<K> keys = new ArrayList<>(bitmaps.keySet());
+        keys.sort(Comparator.comparingInt(key -> bitmaps.get(key).first()));
+        return keys;
+    }
+
     private List<Person> searchPeopleByCommand(String command, boolean includeAlive) {
         Map<String, String> arguments = ConsoleReader.parseArguments(command);
         Cemetery cemetery = null;
@@ -333,31 +731,105 @@ public class Cemetree {
         String deathDateStr = arguments.get("death_date");
         String startDateStr = arguments.get("start_date");
         String endDateStr = arguments.get("end_date");
+        String aliveOnStr = arguments.get("alive_on");
+        String livedBetweenStr = arguments.get("lived_between");
 
-        Date birthDate, deathDate, startDate, endDate;
+        Date birthDate, deathDate, startDate, endDate, aliveOn, livedFrom = null, livedTo = null;
 
         try {
             birthDate = birthDateStr == null ? null : new Date(birthDateStr);
             deathDate = deathDateStr == null ? null : new Date(deathDateStr);
             startDate = startDateStr == null ? null : new Date(startDateStr);
             endDate = endDateStr == null ? null : new Date(endDateStr);
+            aliveOn = aliveOnStr == null ? null : new Date(aliveOnStr);
+
+            // lived_between=<from>,<to>
+            if (livedBetweenStr != null) {
+                String[] period = livedBetweenStr.split(",");
+                if (period.length != 2) throw new IllegalArgumentException("Invalid period: " + livedBetweenStr);
+                livedFrom = new Date(period[0]);
+                livedTo = new Date(period[1]);
+            }
         } catch (IllegalArgumentException e) {
             System.out.println("Incorrect date format");
             throw new CancellationException();
         }
 
-        Person filter = new Person(arguments.get("id"), arguments.get("name"), arguments.get("surname"), arguments.get("sex"), arguments.get("death_cause"), cemetery, birthDate, deathDate);
+        // An ID that can not exist matches nobody
+        if (arguments.containsKey("id") && Person.parseIdOrNone(arguments.get("id")) == Person.NO_ID)
+            return new ArrayList<>();
+
+        String name = arguments.get("name");
+        String surname = arguments.get("surname");
+        String namePrefix = prefix(name);
+        String surnamePrefix = prefix(surname);
+        boolean fuzzy = command.matches("(?i)^.*\\bfuzzy\\b.*$") && !arguments.containsKey("id") && (name != null || surname != null)
+                && namePrefix == null && surnamePrefix == null;
+
+        // Fuzzy and prefix searches look the names up themselves, the filter only checks the other criteria
+        Person filter = new Person(arguments.get("id"), fuzzy || namePrefix != null ? null : name, fuzzy || surnamePrefix != null ? null : surname,
+                arguments.get("sex"), arguments.get("death_cause"), cemetery, birthDate, deathDate);
 
-        List<Person> result = searchPeopleByFilter(filter, includeAlive);
         if (startDate != null || endDate != null) {
             startDate = startDate == null ? new Date("01/01/1500") : startDate;
             endDate = endDate == null ? new Date() : endDate;
-            result = searchPeopleByDate(result, startDate, endDate);
         }
 
+        if (fuzzy || namePrefix != null || surnamePrefix != null) {
+            List<Person> result = new ArrayList<>();
+            for (Person person : fuzzy ? people.closest(name, surname) : people.withPrefix(namePrefix, surnamePrefix)) {
+                if (fuzzy && result.size() == FUZZY_LIMIT) break;
+                if (matches(person, filter, includeAlive, startDate, endDate, livedFrom, livedTo)
+                        && (aliveOn == null || person.livedBetween(aliveOn, aliveOn)))
+                    result.add(person);
+            }
+            return result;
+        }
+
+        // alive_on is a period of one day, the index is asked for it and lived_between is checked on the result
+        if (aliveOn == null)
+            return searchPeopleByFilter(filter, includeAlive, startDate, endDate, livedFrom, livedTo);
+
+        List<Person> result = searchPeopleByFilter(filter, includeAlive, startDate, endDate, aliveOn, aliveOn);
+        if (livedFrom != null) {
+            Date from = livedFrom, to = livedTo;
+            result.removeIf(person -> !person.livedBetween(from, to));
+        }
         return result;
     }
 
+    /**
+     * Returns the prefix of a value like "AHM*", or null if the value is not a prefix.
+     */
+    private static String prefix(String value) {
+        return value != null && value.endsWith("*") ? value.substring(0, value.length() - 1) : null;
+    }
+
+    /**
+     * Refiles the cemetery in the name, region and place indexes after an edit that may have changed its name or address.
+     */
+    private void cemeteryEdited(Cemetery cemetery, String oldName) {
+        unindexCemetery(cemetery, oldName);
+        indexCemetery(cemetery);
+    }
+
+    /**
+     * Cemeteries at 0, 0 have no coordinates, like in the CSV file, and are left out of the place index.
+     */
+    private void indexCemetery(Cemetery cemetery) {
+        cemeteryNames.add(cemetery.getName(), cemetery);
+        cemeteryRegions.add(cemetery);
+        Address address = cemetery.getAddress();
+        if (address != null && (address.getLatitude() != 0 || address.getLongitude() != 0))
+            cemeteryPlaces.add(address.getLatitude(), address.getLongitude(), cemetery);
+    }
+
+    private void unindexCemetery(Cemetery cemetery, String name) {
+        cemeteryNames.remove(name, cemetery);
+        cemeteryRegions.remove(cemetery);
+        cemeteryPlaces.remove(cemetery);
+    }
+
     private Person selectPersonFromCommand(ConsoleReader reader, String command, int commandWordCount, List<Person> selectedPeople, boolean includeAlive) {
         String[] args = command.split(" ");
 
@@ -424,10 +896,23 @@ public class Cemetree {
         Map<String, String> argsMap = ConsoleReader.parseArguments(command);
         String id = argsMap.get("id");
         String name = argsMap.get("name");
+        String namePrefix = prefix(name);
 
-        Cemetery filter = new Cemetery(id, name, new Address(argsMap.get("country"), argsMap.get("city"), argsMap.get("district"), argsMap.get("neighbourhood"), argsMap.get("street")));
+        Cemetery filter = new Cemetery(id, namePrefix != null ? null : name, new Address(argsMap.get("country"), argsMap.get("city"), argsMap.get("district"), argsMap.get("neighbourhood"), argsMap.get("street")));
 
-        List<Cemetery> result = searchCemeteriesByFilter(filter);
+        List<Cemetery> result;
+        if (argsMap.containsKey("near")) {
+            Set<Cemetery> named = namePrefix != null ? new HashSet<>(cemeteryNames.withPrefix(namePrefix)) : null;
+            result = searchCemeteriesNear(argsMap, cemetery -> cemetery.matches(filter) && (named == null || named.contains(cemetery)));
+        } else if (namePrefix != null) {
+            result = new ArrayList<>();
+            for (Cemetery cemetery : cemeteryNames.withPrefix(namePrefix)) {
+                if (cemetery.matches(filter))
+                    result.add(cemetery);
+            }
+        } else {
+            result = searchCemeteriesByFilter(filter);
+        }
 
         if (argsMap.containsKey("sort_by"))
             result.sort(Cemetery.getComparator(argsMap.get("sort_by")));
@@ -435,6 +920,39 @@ public class Cemetree {
         return result;
     }
 
+    /**
+     * Returns the cemeteries that pass the filter closest to near=<latitude>,<longitude> first. With radius=<km> only the
+     * ones within it are returned, with k=<count> at most that many, with neither the closest NEAR_LIMIT.
+     */
+    private List<Cemetery> searchCemeteriesNear(Map<String, String> argsMap, Predicate<Cemetery> filter) {
+        double latitude, longitude, radius;
+        int k;
+        try {
+            double[] place = parsePlace(argsMap.get("near"));
+            latitude = place[0];
+            longitude = place[1];
+            radius = argsMap.containsKey("radius") ? Double.parseDouble(argsMap.get("radius")) : Double.POSITIVE_INFINITY;
+            k = argsMap.containsKey("k") ? Integer.parseInt(argsMap.get("k")) : argsMap.containsKey("radius") ? Integer.MAX_VALUE : NEAR_LIMIT;
+            if (!(radius > 0) || k < 1) throw new IllegalArgumentException("Invalid radius or k");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Incorrect place format. Use near=<latitude>,<longitude>, radius=<km> and k=<count>.");
+            throw new CancellationException();
+        }
+        return cemeteryPlaces.nearest(latitude, longitude, k, radius, filter);
+    }
+
+    /**
+     * Parses "<latitude>,<longitude>" into a pair of degrees.
+     */
+    private static double[] parsePlace(String place) {
+        String[] parts = place.split(",");
+        if (parts.length != 2) throw new IllegalArgumentException("Invalid place: " + place);
+        double latitude = Double.parseDouble(parts[0].trim());
+        double longitude = Double.parseDouble(parts[1].trim());
+        if (!(Math.abs(latitude) <= 90) || !(Math.abs(longitude) <= 180)) throw new IllegalArgumentException("Invalid place: " + place);
+        return new double[]{latitude, longitude};
+    }
+
     private Cemetery selectCemeteryInList(ConsoleReader reader, List<Cemetery> list) {
         Cemetery foundCemetery = null;
 
@@ -513,27 +1031,31 @@ public class Cemetree {
 
         while (!command.matches("(?i)^quit|exit$")) {
             try {
+                // The command line and the login ID are read before the lock is taken, a command then holds it until it is
+                // done, questions included, so a save never sees a change half applied
+                String id = null;
                 if (selectedPerson != null) {
                     System.out.print("> ");
                     command = scanner.nextLine().trim().replaceAll("\\s+", " ");
-                }
-
-                // Login
-                if (selectedPerson == null) {
+                } else {
                     ConsoleReader.Question loginQuestion = new ConsoleReader.Question("Login with ID", "^[\\p{L}\\p{M}'-(0-9)]{2,64}$", Person.QUESTIONS.get(0).errorMessage(), true);
-                    String id;
                     for (id = reader.getAnswer(loginQuestion); !people.containsKey(id) && !id.equalsIgnoreCase("register"); id = reader.getAnswer(loginQuestion)) {
                         System.out.println("Person with ID " + id + " not found.");
                     }
+                }
+
+                lock.lock();
 
+                // Login
+                if (selectedPerson == null) {
                     if (id.equalsIgnoreCase("register")) {
                         selectedPerson = new Person(reader, people, cemeteries);
                         if (selectedPerson.isDead()) {
                             selectedPerson.setAlive();
                             System.out.println("You can not register as a dead person.\nSetting person as alive.");
                         }
-                        people.put(selectedPerson.getId(), selectedPerson);
-                        selectedPerson.connect(people);
+                        addPerson(selectedPerson);
+                        log("add person", selectedPerson.toCsvString());
                         System.out.println("Successfully registered as " + selectedPerson.getName() + " " + selectedPerson.getSurname() + ".");
 
                         continue;
@@ -588,8 +1110,8 @@ public class Cemetree {
                     }
 
                     Person newPerson = new Person(reader, people, cemeteries);
-                    people.put(newPerson.getId(), newPerson);
-                    newPerson.connect(people);
+                    addPerson(newPerson);
+                    log("add person", newPerson.toCsvString());
 
                     System.out.println("Successfully added " + newPerson.getFullName() + ".");
                 }
@@ -607,8 +1129,8 @@ public class Cemetree {
                     Person personToRemove = selectPersonFromCommand(reader, command, 2, selectedPeople, true);
 
                     if (personToRemove != null) {
-                        personToRemove.removeConnections();
-                        people.remove(personToRemove.getId());
+                        removePerson(personToRemove);
+                        log("remove person", personToRemove.getId());
                         System.out.println("Successfully removed " + personToRemove.getFullName() + ".");
                     }
 
@@ -632,6 +1154,7 @@ public class Cemetree {
 
                     if (personToEdit != null) {
                         personToEdit.edit(reader, people, cemeteries);
+                        log("edit person", personToEdit.toCsvString());
                         System.out.println("Successfully updated " + personToEdit.getFullName() + ".");
                     }
                 }
@@ -655,6 +1178,7 @@ public class Cemetree {
                             System.out.println("Person is already dead.");
                         } else {
                             personToSetDead.setDead(reader, cemeteries);
+                            log("set dead", personToSetDead.toCsvString());
                             System.out.println("Successfully set " + personToSetDead.getFullName() + " to dead.");
                         }
                     }
@@ -675,6 +1199,7 @@ public class Cemetree {
                     if (personToSetAlive != null) {
                         if (personToSetAlive.isDead()) {
                             personToSetAlive.setAlive();
+                            log("set alive", personToSetAlive.getId());
                             System.out.println("Successfully set " + personToSetAlive.getFullName() + " to alive.");
                         } else {
                             System.out.println("Person is not dead.");
@@ -702,9 +1227,11 @@ public class Cemetree {
 
                         if (command.matches("(?i)^set admin.*$")) {
                             personToSet.setAdmin(true);
+                            log("set admin", personToSet.getId());
                             System.out.println("Successfully set " + personToSet.getFullName() + " to admin.");
                         } else if (command.matches("(?i)^set user.*$")) {
                             personToSet.setAdmin(false);
+                            log("set user", personToSet.getId());
                             System.out.println("Successfully set " + personToSet.getFullName() + " to user.");
                         }
                     }
@@ -750,9 +1277,23 @@ public class Cemetree {
                         }
                     }
 
+                    Set<FamilyWalk.Relation> relations = EnumSet.noneOf(FamilyWalk.Relation.class);
+                    if (argsMap.containsKey("relation")) {
+                        try {
+                            for (String relation : argsMap.get("relation").split(","))
+                                relations.add(FamilyWalk.Relation.parse(relation));
+                        } catch (IllegalArgumentException e) {
+                            System.out.println("Invalid relation. Use ancestor, descendant, sibling, aunt_uncle, niece_nephew, cousin, spouse or in_law.");
+                            continue;
+                        }
+                    }
+
                     Person personToSearch;
 
-                    if ((!argsMap.isEmpty() && !argsMap.containsKey("interval")) || argsMap.size() >= 2) {
+                    // Arguments other than interval and relation pick the person whose relatives are searched
+                    Set<String> personArguments = new HashSet<>(argsMap.keySet());
+                    personArguments.removeAll(List.of("interval", "relation"));
+                    if (!personArguments.isEmpty()) {
                         if (!selectedPerson.isAdmin()) {
                             System.out.println("You do not have permission to search other people's relatives.");
                             personToSearch = selectedPerson;
@@ -768,7 +1309,7 @@ public class Cemetree {
                         personToSearch = selectedPerson;
                     }
 
-                    List<PersonRelationship> result = searchRelativesRecursive(generationInterval, personToSearch);
+                    List<FamilyWalk.Relative> result = searchRelatives(generationInterval, personToSearch, relations);
 
                     if (result.isEmpty()) {
                         System.out.println("No relatives found.");
@@ -777,14 +1318,56 @@ public class Cemetree {
                         System.out.printf("    %-12s %-12s  %s\n", "Name", "Surname", "Relationship");
                         selectedPeople = new ArrayList<>(result.size());
                         for (int i = 0; i < result.size(); i++) {
-                            PersonRelationship personRelationship = result.get(i);
-                            selectedPeople.add(personRelationship.person);
-                            System.out.printf("%-3d %-12s %-12s %s\n", i + 1, personRelationship.person.getName(), personRelationship.person.getSurname(), personRelationship.relationship);
+                            FamilyWalk.Relative relative = result.get(i);
+                            selectedPeople.add(relative.person());
+                            System.out.printf("%-3d %-12s %-12s %s\n", i + 1, relative.person().getName(), relative.person().getSurname(), relative.label());
                         }
                     }
                     viewMode = ViewMode.PERSONS;
                 }
 
+                // Relationship Between
+                else if (command.matches("(?i)^relationship between.*$")) {
+                    Map<String, String> argsMap = ConsoleReader.parseArguments(command);
+
+                    if (!argsMap.containsKey("second")) {
+                        System.out.println("Please enter the ID of the second person.");
+                        continue;
+                    }
+                    Person first = argsMap.containsKey("first") ? people.get(argsMap.get("first")) : selectedPerson;
+                    Person second = people.get(argsMap.get("second"));
+                    if (first == null || second == null) {
+                        System.out.println("Person not found.");
+                        continue;
+                    }
+                    if (!selectedPerson.isAdmin() && first != selectedPerson && second != selectedPerson) {
+                        System.out.println("You do not have permission to search other people's relationships.");
+                        continue;
+                    }
+                    if (first == second) {
+                        System.out.println("Both are " + first.getFullName() + ".");
+                        continue;
+                    }
+
+                    List<Person> path = Kinship.path(people, first, second);
+                    if (path == null) {
+                        System.out.println("No relationship found within " + Kinship.MAX_LENGTH + " links.");
+                        continue;
+                    }
+
+                    System.out.println(second.getFullName() + " is the " + Kinship.name(path) + " of " + first.getFullName() + ". Use view <number> to view details.");
+                    Person common = people.ancestors().commonAncestor(first, second);
+                    if (common != null && common != first && common != second)
+                        System.out.println("Their closest common ancestor is " + common.getFullName() + " (" + common.getId() + ").");
+                    System.out.printf("    %-12s %-12s  %s\n", "Name", "Surname", "Link");
+                    for (int i = 0; i < path.size(); i++) {
+                        Person person = path.get(i);
+                        System.out.printf("%-3d %-12s %-12s %s\n", i + 1, person.getName(), person.getSurname(), i == 0 ? "" : " " + Kinship.hop(path.get(i - 1), person).label());
+                    }
+                    selectedPeople = path;
+                    viewMode = ViewMode.PERSONS;
+                }
+
                 // Visit Person
                 else if (command.matches("(?i)^visit person.*$")) {
                     if (command.split(" ").length < 3) {
@@ -799,7 +1382,9 @@ public class Cemetree {
                             System.out.println("Can not find the cemetery of " + foundPerson.getName() + " " + foundPerson.getSurname() + ".");
                             continue;
                         }
-                        foundPerson.getCemetery().addVisitor(foundPerson, selectedPerson, new Date());
+                        Date visitDate = new Date();
+                        foundPerson.getCemetery().addVisitor(foundPerson, selectedPerson, visitDate);
+                        log("visit", String.format("%s,%s,%s,%s", foundPerson.getCemetery().getId(), foundPerson.getId(), selectedPerson.getId(), visitDate.toStringCLK()));
                         System.out.println("Successfully visited " + foundPerson.getName() + " " + foundPerson.getSurname() + " in " + foundPerson.getCemetery().getName() + " by " + selectedPerson.getName() + " " + selectedPerson.getSurname() + ".");
                     } else {
                         if (foundPerson != null && !foundPerson.isDead())
@@ -849,8 +1434,8 @@ public class Cemetree {
                     }
 
                     Cemetery newCemetery = new Cemetery(reader, cemeteries);
-                    cemeteries.put(newCemetery.getId(), newCemetery);
-                    newCemetery.connect(people);
+                    addCemetery(newCemetery);
+                    log("add cemetery", newCemetery.toCsvString());
                     System.out.println("Successfully added cemetery \"" + newCemetery.getName() + "\".");
                 }
 
@@ -871,7 +1456,8 @@ public class Cemetree {
                                 "There are " + cemeteryToRemove.getCount() + " people in this cemetery. Confirm removal?"));
 
                         if (answer.matches(ConsoleReader.YES_REGEX)) {
-                            cemeteries.remove(cemeteryToRemove.getId());
+                            removeCemetery(cemeteryToRemove);
+                            log("remove cemetery", cemeteryToRemove.getId());
                             System.out.println("Successfully removed cemetery with ID " + cemeteryToRemove.getId() + ".");
                         } else {
                             throw new CancellationException();
@@ -892,7 +1478,10 @@ public class Cemetree {
                     Cemetery editedCemetery = selectCemeteryFromCommand(reader, command, 2, selectedCemeteries);
 
                     if (editedCemetery != null) {
+                        String name = editedCemetery.getName();
                         editedCemetery.edit(reader);
+                        cemeteryEdited(editedCemetery, name);
+                        log("edit cemetery", editedCemetery.toCsvString());
                         System.out.println("Successfully updated cemetery.");
                     } else {
                         System.out.println("Cemetery not found.");
@@ -913,8 +1502,18 @@ public class Cemetree {
                     } else {
                         System.out.println("Found " + selectedCemeteries.size() + " cemeteries:");
                         System.out.println(Cemetery.toRowHeader());
+                        // Near a place each row also shows how far away the cemetery is
+                        String near = ConsoleReader.parseArguments(command).get("near");
+                        double[] place = near == null ? null : parsePlace(near);
                         for (int i = 0; i < selectedCemeteries.size(); i++) {
-                            System.out.println(selectedCemeteries.get(i).toRowString(i + 1));
+                            Cemetery cemetery = selectedCemeteries.get(i);
+                            if (place == null) {
+                                System.out.println(cemetery.toRowString(i + 1));
+                            } else {
+                                Address address = cemetery.getAddress();
+                                double distance = SpatialIndex.distance(place[0], place[1], address.getLatitude(), address.getLongitude());
+                                System.out.printf("%s %.2f km%n", cemetery.toRowString(i + 1), distance);
+                            }
                         }
                     }
 
@@ -968,6 +1567,54 @@ public class Cemetree {
                     }
                 }
 
+                // Suggest
+                else if (command.matches("(?i)^suggest.*$")) {
+                    Map<String, String> argsMap = ConsoleReader.parseArguments(command);
+
+                    if (!argsMap.containsKey("name") && !argsMap.containsKey("surname") && !argsMap.containsKey("cemetery")) {
+                        System.out.println("Please enter a name, surname or cemetery to complete.");
+                        continue;
+                    }
+
+                    for (String field : new String[]{"name", "surname"}) {
+                        String value = argsMap.get(field);
+                        if (value == null) continue;
+
+                        String prefix = prefix(value) != null ? prefix(value) : value;
+                        Map<String, Integer> completions = people.complete(prefix, field.equals("surname"), SUGGEST_LIMIT);
+                        System.out.println((field.equals("name") ? "Names" : "Surnames") + " starting with " + prefix + ":");
+                        for (Map.Entry<String, Integer> entry : completions.entrySet())
+                            System.out.printf("%-28s : %d\n", entry.getKey(), entry.getValue());
+                    }
+
+                    String value = argsMap.get("cemetery");
+                    if (value != null) {
+                        String prefix = prefix(value) != null ? prefix(value) : value;
+                        System.out.println("Cemeteries starting with " + prefix + ":");
+                        for (Cemetery cemetery : cemeteryNames.withPrefix(prefix, SUGGEST_LIMIT))
+                            System.out.printf("%-28s : %s\n", cemetery.getName(), cemetery.getId());
+                    }
+                }
+
+                // List Regions
+                else if (command.matches("(?i)^list regions.*$")) {
+                    Map<String, String> argsMap = ConsoleReader.parseArguments(command);
+                    List<RegionIndex.Region> regions = cemeteryRegions.regions(new Address(argsMap.get("country"), argsMap.get("city"), argsMap.get("district"), argsMap.get("neighbourhood"), null));
+
+                    if (regions.isEmpty()) {
+                        System.out.println("No regions found.");
+                        continue;
+                    }
+
+                    System.out.println("Found " + regions.size() + " regions:");
+                    System.out.printf("    %-44s %-10s %s\n", "Region", "Cemeteries", "Burials");
+                    for (int i = 0; i < regions.size(); i++) {
+                        RegionIndex.Region region = regions.get(i);
+                        String name = region.parent().isEmpty() ? region.name() : region.parent() + " / " + region.name();
+                        System.out.printf("%-3d %-44s %-10d %d\n", i + 1, name, region.cemeteryCount(), burials(region.cemeteries()));
+                    }
+                }
+
                 // Incorrect Command
                 else if (!command.isBlank() && !command.matches("(?i)^quit|exit$")) {
                     System.out.println("Invalid command. Type \"help\" for a list of commands.");
@@ -976,6 +1623,9 @@ public class Cemetree {
                 if (selectedPerson == null)
                     break;
                 System.out.println("Cancelled operation.");
+            } finally {
+                if (lock.isHeldByCurrentThread())
+                    lock.unlock();
             }
         }
     }
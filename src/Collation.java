@@ -0,0 +1,32 @@
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Turkish rules for comparing names and places. Dotted and dotless i are different letters,
+ * "IŞIK" matches "ışık" but not "işik", and names sort in the Turkish alphabet (C, Ç, ..., I, İ, ..., S, Ş).
+ */
+public final class Collation {
+
+    public static final Locale TURKISH = Locale.forLanguageTag("tr");
+
+    // RuleBasedCollator synchronizes its own methods, the instance can be shared
+    private static final Collator COLLATOR = Collator.getInstance(TURKISH);
+
+    private Collation() {
+    }
+
+    /**
+     * Values that are equal ignoring case have the same match key.
+     */
+    public static String matchKey(String value) {
+        return value.toLowerCase(TURKISH);
+    }
+
+    /**
+     * Comparing sort keys compares their bytes, so a key is worth computing once when a value is sorted many times.
+     */
+    public static CollationKey sortKey(String value) {
+        return COLLATOR.getCollationKey(value);
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class CsvLoader {
+
+    private static final int MAX_CHUNK_SIZE = 32 * 1024 * 1024;
+
+    private record Chunk(long start, long end) {
+    }
+
+    /**
+     * Maps the file in line-aligned chunks and parses the rows of every chunk, on the common pool when parallel is set.
+     * The header line is skipped and the returned rows keep the order of the file.
+     */
+    public static <T> List<T> load(String fileName, Function<CsvTokenizer, T> parser, boolean parallel) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            List<Chunk> chunks = split(channel, parallel);
+
+            IntStream indexes = IntStream.range(0, chunks.size());
+            if (parallel) indexes = indexes.parallel();
+
+            try {
+                return indexes
+                        .mapToObj(i -> parseChunk(channel, chunks.get(i), parser))
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static List<Chunk> split(FileChannel channel, boolean parallel) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        long size = channel.size();
+        long start = nextLineStart(channel, 0, size);
+
+        int chunkCount = parallel ? Math.max(Runtime.getRuntime().availableProcessors() * 4, (int) (size / MAX_CHUNK_SIZE) + 1) : 1;
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(1, size / chunkCount));
+
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize, size);
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static <T> List<T> parseChunk(FileChannel channel, Chunk chunk, Function<CsvTokenizer, T> parser) {
+        ByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        CsvTokenizer tokenizer = new CsvTokenizer(buffer);
+        List<T> result = new ArrayList<>();
+
+        while (tokenizer.nextLine()) {
+            result.add(parser.apply(tokenizer));
+        }
+        return result;
+    }
+}
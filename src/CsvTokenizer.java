@@ -0,0 +1,185 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads comma separated fields straight from a (memory-mapped) byte buffer.
+ * Field bytes are decoded into a reused buffer, so the only allocation per field is the resulting String.
+ */
+public class CsvTokenizer {
+
+    private final ByteBuffer buffer;
+
+    private int position, lineEnd, nextLine;
+
+    private byte[] bytes = new byte[256];
+
+    private char[] chars = new char[256];
+
+    private final Field field = new Field();
+
+    CsvTokenizer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.nextLine = buffer.position();
+        this.lineEnd = buffer.position();
+    }
+
+    /**
+     * Moves to the next non-empty line. Returns false at the end of the buffer.
+     */
+    public boolean nextLine() {
+        int limit = buffer.limit();
+        while (nextLine < limit) {
+            int start = nextLine;
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n') end++;
+
+            nextLine = end + 1;
+            if (end > start && buffer.get(end - 1) == '\r') end--;
+
+            if (end > start) {
+                position = start;
+                lineEnd = end;
+                return true;
+            }
+        }
+        position = lineEnd = limit;
+        return false;
+    }
+
+    public boolean hasMoreFields() {
+        return position <= lineEnd;
+    }
+
+    public String nextString() {
+        int start = position;
+        int end = fieldEnd();
+        return decode(start, end);
+    }
+
+    /**
+     * Returns null instead of a blank string.
+     */
+    public String nextStringOrNull() {
+        String value = nextString();
+        return value.isBlank() ? null : value;
+    }
+
+    public boolean nextFlag() {
+        int start = position;
+        int end = fieldEnd();
+        return !(end - start == 1 && buffer.get(start) == '0');
+    }
+
+    public double nextDouble() {
+        String value = nextString();
+        return value.isBlank() ? 0 : Double.parseDouble(value);
+    }
+
+    /**
+     * Parses the field in place, without creating a String for it. Returns null for a blank field.
+     */
+    public Date nextDate(boolean isCLK) {
+        Field value = nextField();
+        return value.length() == 0 ? null : Date.parse(value, isCLK);
+    }
+
+    /**
+     * Parses a person ID in place. Returns Person.NO_ID for a blank field.
+     */
+    public long nextId() {
+        return Person.parseId(nextField());
+    }
+
+    public void skipField() {
+        fieldEnd();
+    }
+
+    private Field nextField() {
+        field.start = position;
+        field.end = fieldEnd();
+
+        while (field.start < field.end && buffer.get(field.start) == ' ') field.start++;
+        while (field.end > field.start && buffer.get(field.end - 1) == ' ') field.end--;
+        return field;
+    }
+
+    private int fieldEnd() {
+        int end = position;
+        while (end < lineEnd && buffer.get(end) != ',') end++;
+        position = end + 1;
+        return end;
+    }
+
+    /**
+     * Reused view of the current field. Only meant for ASCII fields like dates and IDs.
+     */
+    private class Field implements CharSequence {
+        private int start, end;
+
+        public int length() {
+            return end - start;
+        }
+
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xFF);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return decode(this.start + start, this.start + end);
+        }
+
+        public String toString() {
+            return decode(start, end);
+        }
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (length <= 0) return "";
+
+        if (bytes.length < length) bytes = new byte[Math.max(length, bytes.length * 2)];
+
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(start + i);
+            bytes[i] = b;
+            if (b < 0) ascii = false;
+        }
+
+        if (ascii) return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+
+        if (chars.length < length) chars = new char[Math.max(length, chars.length * 2)];
+
+        int count = 0;
+        for (int i = 0; i < length; ) {
+            int b = bytes[i] & 0xFF;
+            int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+                i += 1;
+            } else if (b < 0xE0 && i + 1 < length) {
+                codePoint = ((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F);
+                i += 2;
+            } else if (b < 0xF0 && i + 2 < length) {
+                codePoint = ((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F);
+                i += 3;
+            } else if (i + 3 < length) {
+                codePoint = ((b & 0x07) << 18) | ((bytes[i + 1] & 0x3F) << 12) | ((bytes[i + 2] & 0x3F) << 6) | (bytes[i + 3] & 0x3F);
+                i += 4;
+            } else {
+                codePoint = 0xFFFD;
+                i = length;
+            }
+
+            if (codePoint >= 0x10000) {
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[count++] = (char) codePoint;
+            }
+        }
+
+        return new String(chars, 0, count);
+    }
+}
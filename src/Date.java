@@ -1,18 +1,32 @@
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 
-public class Date extends GregorianCalendar {
+/**
+ * Immutable local date and time with minute precision, stored as minutes since 01/01/1970 00:00.
+ * Dates without a time are at 00:00 of their day. The formatters are shared, since DateTimeFormatter is thread-safe.
+ */
+public final class Date implements Comparable<Date> {
 
-    private final SimpleDateFormat FORMAT = new SimpleDateFormat("dd/MM/yyyy");
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
-    private final SimpleDateFormat FORMAT_CLK = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+    private static final DateTimeFormatter FORMAT_CLK = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
 
     public final static String REGEX = "^(((0[1-9]|[12]\\d|3[01])[-\\/](0[13578]|1[02])[-\\/]((1[5-9]\\d{2})|(2\\d{3})))|((0[1-9]|[12]\\d|30)[-\\/](0[13456789]|1[012])[-\\/]((1[5-9]\\d{2})|(2\\d{3})))|((0[1-9]|1\\d|2[0-8])[-\\/]02[-\\/]((1[5-9]\\d{2})|(2\\d{3})))|(29[-\\/]02[-\\/]((1[6-9]|[2-9]\\d)(0[48]|[2468][048]|[13579][26])|((16|[2468][048]|[3579][26])00))))$";
 
+    private final int epochMinute;
+
+    private Date(int epochMinute) {
+        this.epochMinute = epochMinute;
+    }
+
+    /**
+     * Month is zero-based, like in Calendar.
+     */
     Date(int day, int month, int year) {
-        super(year, month, day);
+        this((int) LocalDate.of(year, month + 1, day).toEpochDay() * MINUTES_PER_DAY);
     }
 
     Date(String date) {
@@ -20,34 +34,139 @@ public class Date extends GregorianCalendar {
     }
 
     Date(String date, boolean isCLK) {
-        date = date.replaceAll("-", "/");
-        try {
-            if (isCLK)
-                this.setTime(FORMAT_CLK.parse(date));
-            else
-                this.setTime(FORMAT.parse(date));
-        } catch (ParseException e) {
-            throw new IllegalArgumentException();
-        }
+        this(parseEpochMinute(date, isCLK));
     }
 
+    /**
+     * Current date and time.
+     */
     Date() {
-        super();
+        this(toEpochMinute(LocalDateTime.now()));
+    }
+
+    public static Date ofEpochDay(int epochDay) {
+        return new Date(epochDay * MINUTES_PER_DAY);
+    }
+
+    public static Date ofEpochMinute(int epochMinute) {
+        return new Date(epochMinute);
+    }
+
+    public static Date parse(CharSequence date, boolean isCLK) {
+        return new Date(parseEpochMinute(date, isCLK));
+    }
+
+    /**
+     * Parses dd/MM/yyyy, dd-MM-yyyy or, with isCLK, dd/MM/yyyy HH:mm without creating any objects.
+     * Accepts exactly the dates accepted by REGEX, otherwise throws IllegalArgumentException.
+     */
+    public static int parseEpochMinute(CharSequence date, boolean isCLK) {
+        if (date.length() != (isCLK ? 16 : 10)) throw new IllegalArgumentException("Invalid date: " + date);
+
+        int day = digits(date, 0, 2);
+        int month = digits(date, 3, 2);
+        int year = digits(date, 6, 4);
+        if (!isSeparator(date.charAt(2)) || !isSeparator(date.charAt(5)) || !isValid(day, month, year))
+            throw new IllegalArgumentException("Invalid date: " + date);
+
+        int minuteOfDay = 0;
+        if (isCLK) {
+            int hour = digits(date, 11, 2);
+            int minute = digits(date, 14, 2);
+            if (date.charAt(10) != ' ' || date.charAt(13) != ':' || hour > 23 || minute > 59)
+                throw new IllegalArgumentException("Invalid date: " + date);
+            minuteOfDay = hour * 60 + minute;
+        }
+
+        return epochDay(year, month, day) * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') throw new IllegalArgumentException("Invalid date: " + text);
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '-';
+    }
+
+    /**
+     * Same rules as REGEX: years 1500-2999, and 29/02 only in Gregorian leap years from 1600 on.
+     */
+    private static boolean isValid(int day, int month, int year) {
+        if (month < 1 || month > 12 || day < 1) return false;
+
+        if (month == 2 && day == 29)
+            return year >= 1600 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0));
+
+        if (year < 1500 || year > 2999) return false;
+
+        return switch (month) {
+            case 2 -> day <= 28;
+            case 4, 6, 9, 11 -> day <= 30;
+            default -> day <= 31;
+        };
+    }
+
+    /**
+     * Days since 01/01/1970 in the proleptic Gregorian calendar.
+     */
+    private static int epochDay(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int toEpochMinute(LocalDateTime dateTime) {
+        return (int) dateTime.toLocalDate().toEpochDay() * MINUTES_PER_DAY + dateTime.getHour() * 60 + dateTime.getMinute();
+    }
+
+    public int getEpochMinute() {
+        return epochMinute;
+    }
+
+    public int getEpochDay() {
+        return Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+    }
+
+    public boolean before(Date date) {
+        return epochMinute < date.epochMinute;
+    }
+
+    public boolean after(Date date) {
+        return epochMinute > date.epochMinute;
+    }
+
+    public int compareTo(Date date) {
+        return Integer.compare(epochMinute, date.epochMinute);
+    }
+
+    /**
+     * Two dates are equal if they are on the same day.
+     */
+    public boolean equals(Object object) {
+        if (!(object instanceof Date date)) return false;
+        return this.getEpochDay() == date.getEpochDay();
     }
 
-    public boolean equals(Date date) {
-        if (date == null) return false;
-        if (this.get(Calendar.YEAR) != date.get(Calendar.YEAR)) return false;
-        if (this.get(Calendar.MONTH) != date.get(Calendar.MONTH)) return false;
-        if (this.get(Calendar.DAY_OF_MONTH) != date.get(Calendar.DAY_OF_MONTH)) return false;
-        return true;
+    public int hashCode() {
+        return getEpochDay();
     }
 
     public String toString() {
-        return FORMAT.format(this.getTime());
+        return FORMAT.format(LocalDate.ofEpochDay(getEpochDay()));
     }
 
     public String toStringCLK() {
-        return FORMAT_CLK.format(this.getTime());
+        int minuteOfDay = Math.floorMod(epochMinute, MINUTES_PER_DAY);
+        return FORMAT_CLK.format(LocalDate.ofEpochDay(getEpochDay()).atTime(minuteOfDay / 60, minuteOfDay % 60));
     }
 }
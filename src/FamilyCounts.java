@@ -0,0 +1,303 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Number of descendants, buried descendants and known ancestors of the people of a PersonStore, and the number of
+ * generations below them, keyed by slot so reading them takes no walk.
+ * The counts are of distinct people: somebody who descends from a person over two lines, as under pedigree collapse,
+ * is counted once. When a link changes, only the ancestors of the people below it are touched, so a write walks up
+ * from each of them instead of down from everybody. Links are the mother and father fields, to stored people.
+ * A write costs the people below the link times their ancestors. For a new person without children that is one walk up,
+ * one ancestor per generation along a single line but up to 2^depth with both parents known, and more for a link high
+ * up in a big family. Loads link people in whatever order the file has, so the counts are suspended while loading and
+ * built once from the finished links.
+ */
+public class FamilyCounts {
+
+    private final PersonStore store;
+
+    private int[] descendants = new int[16];
+
+    private int[] buriedDescendants = new int[16];
+
+    private int[] ancestors = new int[16];
+
+    private int[] depths = new int[16];
+
+    /**
+     * Whether the person in the slot was counted as buried by its ancestors.
+     */
+    private boolean[] buried = new boolean[16];
+
+    /**
+     * Marks of the current walk, a slot is marked when it holds the walk's stamp, so nothing has to be cleared.
+     */
+    private int[] subtreeMarks = new int[16], ancestorMarks = new int[16];
+
+    private int stamp;
+
+    private boolean suspended;
+
+    FamilyCounts(PersonStore store) {
+        this.store = store;
+    }
+
+    public int descendants(Person person) {
+        return person.getSlot() < 0 ? 0 : descendants[person.getSlot()];
+    }
+
+    /**
+     * Number of descendants that are dead and buried in a cemetery.
+     */
+    public int buriedDescendants(Person person) {
+        return person.getSlot() < 0 ? 0 : buriedDescendants[person.getSlot()];
+    }
+
+    public int ancestors(Person person) {
+        return person.getSlot() < 0 ? 0 : ancestors[person.getSlot()];
+    }
+
+    /**
+     * Generations below the person down to its deepest descendant, 0 without children.
+     */
+    public int depth(Person person) {
+        return person.getSlot() < 0 ? 0 : depths[person.getSlot()];
+    }
+
+    /**
+     * Counts the person stored in the slot, and the people below it, for their ancestors.
+     */
+    void add(int slot, Person person) {
+        ensureCapacity(slot);
+        if (suspended) return;
+        count(List.of(person), 1);
+        depths[slot] = depthBelow(person);
+        raise(person);
+    }
+
+    /**
+     * Takes the person about to leave its slot, and the people below it, off their ancestors.
+     */
+    void removing(Person person) {
+        if (suspended) return;
+        count(List.of(person), -1);
+    }
+
+    /**
+     * Clears the slot of a removed person and counts its children again for the ancestors they still have.
+     */
+    void removed(int slot, Person person) {
+        if (suspended) return;
+        descendants[slot] = buriedDescendants[slot] = ancestors[slot] = depths[slot] = 0;
+        buried[slot] = false;
+        count(children(person), 1);
+        lower(Arrays.asList(person.getMother(), person.getFather()));
+    }
+
+    /**
+     * Takes a person whose mother or father is about to change, and the people below it, off their ancestors.
+     */
+    void linking(Person person) {
+        if (!suspended && stored(person)) count(List.of(person), -1);
+    }
+
+    /**
+     * Counts the person and the people below it for their ancestors again after its parent changed from previous.
+     */
+    void linked(Person person, Person previous) {
+        if (suspended || !stored(person)) return;
+        count(List.of(person), 1);
+        // The new parent's children list may not hold the person yet, raising last puts it back under the parent
+        lower(Arrays.asList(previous));
+        raise(person);
+    }
+
+    /**
+     * Moves a stored person in or out of the buried counts of its ancestors after it died, came back or got a cemetery.
+     */
+    void updated(int slot, Person person) {
+        boolean now = isBuried(person);
+        if (suspended || buried[slot] == now) return;
+        buried[slot] = now;
+        int change = now ? 1 : -1;
+        nextStamp();
+        for (Person ancestor : above(person)) buriedDescendants[ancestor.getSlot()] += change;
+    }
+
+    /**
+     * Stops counting until rebuild, while many people are stored and linked.
+     */
+    void suspend() {
+        suspended = true;
+    }
+
+    /**
+     * Counts everybody again from the links as they are now and goes back to counting every change.
+     * People are taken youngest generation first, so the children of a person have their depth before it does.
+     */
+    void rebuild() {
+        suspended = false;
+        Arrays.fill(descendants, 0);
+        Arrays.fill(buriedDescendants, 0);
+
+        List<Person> people = new ArrayList<>(store.size());
+        for (int slot = 0; slot < store.slotCount(); slot++) {
+            if (store.bySlot(slot) != null) people.add(store.bySlot(slot));
+        }
+        AncestorIndex index = store.ancestors();
+        people.sort(Comparator.comparingInt(index::generation).reversed());
+
+        for (Person person : people) {
+            int slot = person.getSlot();
+            depths[slot] = depthBelow(person);
+            buried[slot] = isBuried(person);
+
+            nextStamp();
+            List<Person> above = above(person);
+            ancestors[slot] = above.size();
+            for (Person ancestor : above) {
+                descendants[ancestor.getSlot()]++;
+                if (buried[slot]) buriedDescendants[ancestor.getSlot()]++;
+            }
+        }
+    }
+
+    /**
+     * Adds change to the counts of every ancestor of the people below the roots, roots included, that is not below the roots
+     * itself. Adding also counts the ancestors of those people.
+     */
+    private void count(List<Person> roots, int change) {
+        nextStamp();
+        List<Person> subtree = new ArrayList<>();
+        ArrayDeque<Person> queue = new ArrayDeque<>();
+        for (Person root : roots) mark(root, subtree, queue);
+        while (!queue.isEmpty()) {
+            Person person = queue.poll();
+            for (Person child : children(person)) mark(child, subtree, queue);
+        }
+
+        int subtreeStamp = stamp;
+        for (Person person : subtree) {
+            int slot = person.getSlot();
+            boolean counted = change > 0 ? isBuried(person) : buried[slot];
+            buried[slot] = change > 0 && counted;
+
+            nextStamp();
+            List<Person> above = above(person);
+            if (change > 0) ancestors[slot] = above.size();
+            for (Person ancestor : above) {
+                if (subtreeMarks[ancestor.getSlot()] == subtreeStamp) continue;
+                descendants[ancestor.getSlot()] += change;
+                if (counted) buriedDescendants[ancestor.getSlot()] += change;
+            }
+        }
+    }
+
+    private void mark(Person person, List<Person> subtree, ArrayDeque<Person> queue) {
+        if (!stored(person) || subtreeMarks[person.getSlot()] == stamp) return;
+        subtreeMarks[person.getSlot()] = stamp;
+        subtree.add(person);
+        queue.add(person);
+    }
+
+    /**
+     * Distinct stored ancestors of the person, marked with the current stamp.
+     */
+    private List<Person> above(Person person) {
+        List<Person> result = new ArrayList<>();
+        ArrayDeque<Person> queue = new ArrayDeque<>();
+        queue.add(person);
+        while (!queue.isEmpty()) {
+            Person current = queue.poll();
+            for (Person parent : new Person[]{current.getMother(), current.getFather()}) {
+                if (!stored(parent) || ancestorMarks[parent.getSlot()] == stamp) continue;
+                ancestorMarks[parent.getSlot()] = stamp;
+                result.add(parent);
+                queue.add(parent);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Pushes the depth of the person up to its parents, and theirs further up, as far as it makes them deeper.
+     */
+    private void raise(Person person) {
+        ArrayDeque<Person> queue = new ArrayDeque<>();
+        queue.add(person);
+        while (!queue.isEmpty()) {
+            Person current = queue.poll();
+            int depth = depths[current.getSlot()] + 1;
+            for (Person parent : new Person[]{current.getMother(), current.getFather()}) {
+                if (!stored(parent) || depths[parent.getSlot()] >= depth) continue;
+                // A person can only be its own ancestor in broken data, the depth would grow forever
+                if (depth > store.slotCount()) continue;
+                depths[parent.getSlot()] = depth;
+                queue.add(parent);
+            }
+        }
+    }
+
+    /**
+     * Computes the depth of people that lost a child again, and of their parents as far as it makes them shallower.
+     */
+    private void lower(List<Person> people) {
+        ArrayDeque<Person> queue = new ArrayDeque<>();
+        for (Person person : people) if (stored(person)) queue.add(person);
+        while (!queue.isEmpty()) {
+            Person current = queue.poll();
+            int depth = depthBelow(current);
+            if (depth >= depths[current.getSlot()]) continue;
+            depths[current.getSlot()] = depth;
+            for (Person parent : new Person[]{current.getMother(), current.getFather()}) {
+                if (stored(parent)) queue.add(parent);
+            }
+        }
+    }
+
+    private int depthBelow(Person person) {
+        int depth = 0;
+        for (Person child : children(person)) depth = Math.max(depth, depths[child.getSlot()] + 1);
+        return depth;
+    }
+
+    /**
+     * Stored children whose mother or father is the person. The children list can still hold a child that was unlinked,
+     * or not hold one yet while it is being linked.
+     */
+    private List<Person> children(Person person) {
+        List<Person> result = new ArrayList<>();
+        for (Person child : person.getChildren()) {
+            if (stored(child) && (child.getMother() == person || child.getFather() == person) && !result.contains(child))
+                result.add(child);
+        }
+        return result;
+    }
+
+    private boolean stored(Person person) {
+        return person != null && store.bySlot(person.getSlot()) == person;
+    }
+
+    private static boolean isBuried(Person person) {
+        return person.isDead() && person.getCemetery() != null;
+    }
+
+    private void nextStamp() {
+        stamp++;
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot < descendants.length) return;
+        int capacity = Math.max(slot + 1, descendants.length * 2);
+        descendants = Arrays.copyOf(descendants, capacity);
+        buriedDescendants = Arrays.copyOf(buriedDescendants, capacity);
+        ancestors = Arrays.copyOf(ancestors, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        buried = Arrays.copyOf(buried, capacity);
+        subtreeMarks = Arrays.copyOf(subtreeMarks, capacity);
+        ancestorMarks = Arrays.copyOf(ancestorMarks, capacity);
+    }
+}
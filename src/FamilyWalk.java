@@ -0,0 +1,279 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Breadth-first walk over the family graph, without recursion.
+ * A blood relative is some generations up from the person, then some generations down, which names the relation:
+ * one up and one down is a sibling, two up and two down a first cousin. Visited slots are kept in bit sets for going up and
+ * going down on each side of the marriage, so pedigree collapse does not list or walk anybody twice and deep intervals stay linear.
+ */
+public class FamilyWalk {
+
+    public enum Relation {
+        ANCESTOR, DESCENDANT, SIBLING, AUNT_UNCLE, NIECE_NEPHEW, COUSIN, SPOUSE, IN_LAW;
+
+        /**
+         * The blood relation of a person the given generations up, then down from somebody, or null for the person itself.
+         */
+        static Relation of(int up, int down) {
+            if (up == 0) return down == 0 ? null : DESCENDANT;
+            if (down == 0) return ANCESTOR;
+            if (up == 1) return down == 1 ? SIBLING : NIECE_NEPHEW;
+            return down == 1 ? AUNT_UNCLE : COUSIN;
+        }
+
+        /**
+         * Parses names like "cousin" or "aunt_uncle".
+         */
+        public static Relation parse(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    /**
+     * The link a relative was reached over from the previous person.
+     */
+    public enum Hop {
+        MOTHER("Mother"), FATHER("Father"), CHILD("Child"), SPOUSE("Spouse");
+
+        private final String label;
+
+        Hop(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * A relative found up generations up and down generations down, reached from via over the given hop.
+     * On the spouse's side the generations count from the spouse. Nothing is formatted until label or name is called,
+     * so a walk only builds the text of the rows that are shown.
+     */
+    public record Relative(Person person, Relation relation, int up, int down, boolean spouseSide, Person via, Hop hop) {
+
+        /**
+         * Name of the relation like " Grand Mother (AYŞE KAYA' s Mother)". Children and ancestors are named the way the
+         * relatives search always named them. In-laws are the spouse's family and the spouses of relatives,
+         * except that a parent's spouse is a step parent and the spouse's child a step child.
+         */
+        public String label() {
+            return " " + name() + " (" + via.getName() + " " + via.getSurname() + "' s " + hop.label() + ")";
+        }
+
+        /**
+         * Name of the relation alone, like "Grand Mother" or "Sister in Law".
+         */
+        public String name() {
+            if (relation == Relation.SPOUSE) return "Spouse";
+            if (relation != Relation.IN_LAW) return blood(Relation.of(up, down), up, down, person, hop.label());
+
+            Relation blood = Relation.of(up, down);
+            String parent = gendered(person, "Father", "Mother", "Parent");
+            boolean step = spouseSide ? blood == Relation.DESCENDANT : blood == Relation.ANCESTOR;
+            return step ? "Step " + blood(blood, up, down, person, parent) : blood(blood, up, down, person, parent) + " in Law";
+        }
+    }
+
+    /**
+     * Name of the blood relation, like "Grand Aunt" or "Second Cousin Once Removed". Ancestors are named parent, which is
+     * Mother or Father, the other relations by the sex of the person.
+     */
+    static String blood(Relation relation, int up, int down, Person person, String parent) {
+        return switch (relation) {
+            case ANCESTOR -> "Grand ".repeat(up - 1) + parent;
+            case DESCENDANT -> "Grand ".repeat(down - 1) + "Child";
+            case SIBLING -> gendered(person, "Brother", "Sister", "Sibling");
+            case AUNT_UNCLE -> "Grand ".repeat(up - 2) + gendered(person, "Uncle", "Aunt", "Aunt/Uncle");
+            case NIECE_NEPHEW -> "Grand ".repeat(down - 2) + gendered(person, "Nephew", "Niece", "Niece/Nephew");
+            default -> cousin(Math.min(up, down) - 1, Math.abs(up - down));
+        };
+    }
+
+    private static String cousin(int degree, int removed) {
+        String[] ordinals = {"First", "Second", "Third", "Fourth", "Fifth"};
+        String[] times = {"", " Once Removed", " Twice Removed"};
+        return (degree <= ordinals.length ? ordinals[degree - 1] : degree + "th") + " Cousin"
+                + (removed < times.length ? times[removed] : " " + removed + " Times Removed");
+    }
+
+    static String gendered(Person person, String male, String female, String other) {
+        if ("Male".equalsIgnoreCase(person.getSex())) return male;
+        if ("Female".equalsIgnoreCase(person.getSex())) return female;
+        return other;
+    }
+
+    private record Step(Person person, int up, int down, boolean spouseSide) {
+    }
+
+    private final PersonStore people;
+
+    private final int generations;
+
+    private final Set<Relation> relations;
+
+    private final ArrayDeque<Step> queue = new ArrayDeque<>();
+
+    /**
+     * Slots entered going up and going down, on the person's and on the spouse's side.
+     */
+    private final BitSet[] visited = {new BitSet(), new BitSet(), new BitSet(), new BitSet()};
+
+    /**
+     * Generations up, or down, at which the slots of visited were entered.
+     */
+    private final int[][] depths = {new int[16], new int[16], new int[16], new int[16]};
+
+    private final BitSet listed = new BitSet();
+
+    private final List<Relative> result = new ArrayList<>();
+
+    private FamilyWalk(PersonStore people, int generations, Set<Relation> relations) {
+        this.people = people;
+        this.generations = generations;
+        this.relations = relations.isEmpty() ? EnumSet.allOf(Relation.class) : EnumSet.copyOf(relations);
+    }
+
+    /**
+     * Returns the relatives of the person at most the given generations up and down, closest first.
+     * Only the given relations are returned, all of them if the set is empty, and the walk skips the parts of the
+     * family that can not lead to them: asking for children never goes up. Somebody related in two ways is listed under the
+     * closest relation that is asked for. People who are not in the store, like the spouse of a removed person, are left out.
+     */
+    public static List<Relative> walk(PersonStore people, Person person, int generations, Set<Relation> relations) {
+        FamilyWalk walk = new FamilyWalk(people, generations, relations);
+        if (!walk.stored(person)) return walk.result;
+        walk.listed.set(person.getSlot());
+        walk.enter(new Step(person, 0, 0, false));
+        walk.run();
+        return walk.result;
+    }
+
+    private void run() {
+        while (!queue.isEmpty()) {
+            Step step = queue.poll();
+            Person person = step.person;
+            int up = step.up, down = step.down;
+
+            if (down == 0 && up < generations && wantsUp(up + 1, step.spouseSide)) {
+                reach(person.getMother(), new Step(person.getMother(), up + 1, 0, step.spouseSide), person, Hop.MOTHER);
+                reach(person.getFather(), new Step(person.getFather(), up + 1, 0, step.spouseSide), person, Hop.FATHER);
+            }
+
+            if (down < generations && wantsDown(up, down + 1, step.spouseSide)) {
+                for (Person child : person.getChildren()) {
+                    // Going back down the line that was walked up would find the person again as a niece or a cousin
+                    if (up > 0 && isUp(child, up - 1, step.spouseSide)) continue;
+                    reach(child, new Step(child, up, down + 1, step.spouseSide), person, Hop.CHILD);
+                }
+            }
+
+            // The spouse's family is walked like the person's own, spouses of relatives end the walk
+            Person spouse = person.getSpouse();
+            if (spouse == null || step.spouseSide) continue;
+            if (up == 0 && down == 0) {
+                list(spouse, Relation.SPOUSE, 0, 0, false, person, Hop.SPOUSE);
+                if (relations.contains(Relation.IN_LAW)) enter(new Step(spouse, 0, 0, true));
+            } else {
+                list(spouse, Relation.IN_LAW, up, down, false, person, Hop.SPOUSE);
+            }
+        }
+    }
+
+    /**
+     * Lists the relative if it was not listed and its relation is asked for, then queues the step if it was not taken.
+     */
+    private void reach(Person relative, Step step, Person via, Hop hop) {
+        if (!stored(relative)) return;
+        Relation relation = step.spouseSide ? Relation.IN_LAW : Relation.of(step.up, step.down);
+        list(relative, relation, step.up, step.down, step.spouseSide, via, hop);
+        enter(step);
+    }
+
+    private void list(Person relative, Relation relation, int up, int down, boolean spouseSide, Person via, Hop hop) {
+        if (!stored(relative) || !relations.contains(relation) || listed.get(relative.getSlot())) return;
+        listed.set(relative.getSlot());
+        result.add(new Relative(relative, relation, up, down, spouseSide, via, hop));
+    }
+
+    /**
+     * Queues the step unless its person was entered in the same direction before. Going down a person is entered again
+     * when it is reached fewer generations down, which lets the walk go further down from it, at most generations times.
+     */
+    private void enter(Step step) {
+        if (!stored(step.person)) return;
+        int kind = (step.spouseSide ? 2 : 0) + (step.down > 0 ? 1 : 0);
+        int slot = step.person.getSlot();
+        int depth = step.down > 0 ? step.down : step.up;
+        if (visited[kind].get(slot) && (step.down == 0 || depths[kind][slot] <= depth)) return;
+
+        visited[kind].set(slot);
+        if (slot >= depths[kind].length) depths[kind] = Arrays.copyOf(depths[kind], Math.max(slot + 1, depths[kind].length * 2));
+        depths[kind][slot] = depth;
+        queue.add(step);
+    }
+
+    /**
+     * Whether the person was entered going up, the given generations up.
+     */
+    private boolean isUp(Person person, int up, boolean spouseSide) {
+        int kind = spouseSide ? 2 : 0;
+        int slot = person.getSlot();
+        return slot >= 0 && visited[kind].get(slot) && depths[kind][slot] == up;
+    }
+
+    /**
+     * Whether the person is the one stored in its slot. A removed spouse, or a child a full cemetery turned away, can
+     * still be linked from people who are.
+     */
+    private boolean stored(Person person) {
+        return person != null && person.getSlot() >= 0 && people.bySlot(person.getSlot()) == person;
+    }
+
+    /**
+     * Whether going up to the given generation can still lead to a relation that is asked for.
+     */
+    private boolean wantsUp(int up, boolean spouseSide) {
+        if (spouseSide || relations.contains(Relation.IN_LAW)) return true;
+        for (Relation relation : relations) {
+            switch (relation) {
+                case ANCESTOR, AUNT_UNCLE, COUSIN -> {
+                    return true;
+                }
+                case SIBLING, NIECE_NEPHEW -> {
+                    if (up == 1) return true;
+                }
+                default -> {
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether going down to the given generation from the given one up can still lead to a relation that is asked for.
+     */
+    private boolean wantsDown(int up, int down, boolean spouseSide) {
+        if (spouseSide || relations.contains(Relation.IN_LAW)) return true;
+        for (Relation relation : relations) {
+            boolean wanted = switch (relation) {
+                case DESCENDANT -> up == 0;
+                case SIBLING -> up == 1 && down == 1;
+                case NIECE_NEPHEW -> up == 1;
+                case AUNT_UNCLE -> up >= 2 && down == 1;
+                case COUSIN -> up >= 2;
+                default -> false;
+            };
+            if (wanted) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,184 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only log of the changes made since the last save.
+ * Records are buffered and written with a single fsync per batch, either every FLUSH_INTERVAL_MS or when the buffer fills up.
+ * A save rotates the journal into a numbered segment and deletes the segment once the saved files are written.
+ */
+public class Journal {
+
+    private static final String HEADER = "operation,record\n";
+
+    private static final long FLUSH_INTERVAL_MS = 100;
+
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private final String fileName;
+
+    private FileChannel channel;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    Journal(String fileName) throws IOException {
+        this.fileName = fileName;
+        this.channel = open(fileName);
+
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                System.out.println("Failed to write journal: " + e.getMessage());
+            }
+        }, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static String fileName(String fileName) {
+        return fileName + "_journal.csv";
+    }
+
+    private static FileChannel open(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(fileName(fileName)), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // Cut off a torn last record so new records do not get appended to it
+        long end = channel.size();
+        ByteBuffer last = ByteBuffer.allocate(1);
+        while (end > 0 && channel.read(last.clear(), end - 1) == 1 && last.get(0) != '\n') end--;
+        channel.truncate(end);
+        channel.position(end);
+
+        if (channel.size() == 0) {
+            channel.write(ByteBuffer.wrap(HEADER.getBytes(StandardCharsets.UTF_8)));
+            channel.force(false);
+        }
+        return channel;
+    }
+
+    /**
+     * Returns the rotated segments, oldest first.
+     */
+    private static List<Path> segments(String fileName) throws IOException {
+        Path base = Path.of(fileName).toAbsolutePath();
+        String prefix = base.getFileName() + "_journal_";
+
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(base.getParent(), prefix + "*.csv")) {
+            for (Path path : stream) segments.add(path);
+        }
+        segments.sort(Comparator.comparing(Path::toString));
+        return segments;
+    }
+
+    public synchronized void append(String operation, String record) {
+        byte[] bytes = (operation + "," + record + "\n").getBytes(StandardCharsets.UTF_8);
+        buffer.write(bytes, 0, bytes.length);
+
+        if (buffer.size() >= MAX_BUFFER_SIZE) {
+            try {
+                flush();
+            } catch (IOException e) {
+                System.out.println("Failed to write journal: " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (buffer.size() == 0) return;
+
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) channel.write(bytes);
+        channel.force(false);
+        buffer.reset();
+    }
+
+    /**
+     * Moves the records written so far to a new segment and starts an empty journal. Returns the segment.
+     */
+    public synchronized Path rotate() throws IOException {
+        flush();
+        channel.close();
+
+        List<Path> segments = segments(fileName);
+        int number = 1;
+        if (!segments.isEmpty()) {
+            String last = segments.get(segments.size() - 1).getFileName().toString();
+            number = Integer.parseInt(last.substring(last.lastIndexOf('_') + 1, last.length() - ".csv".length())) + 1;
+        }
+
+        Path segment = Path.of(String.format("%s_journal_%06d.csv", fileName, number));
+        Files.move(Path.of(fileName(fileName)), segment, StandardCopyOption.ATOMIC_MOVE);
+
+        channel = open(fileName);
+        return segment;
+    }
+
+    /**
+     * Deletes the given segment and every segment before it.
+     */
+    public static void deleteSegments(String fileName, Path upTo) throws IOException {
+        for (Path segment : segments(fileName)) {
+            if (segment.toAbsolutePath().toString().compareTo(upTo.toAbsolutePath().toString()) <= 0)
+                Files.deleteIfExists(segment);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        flusher.shutdownNow();
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Passes every complete record of the segments and the journal to the consumer in the order it was written.
+     * A torn last record, left behind by a crash in the middle of a write, is ignored.
+     */
+    public static void replay(String fileName, Consumer<CsvTokenizer> consumer) throws IOException {
+        for (Path segment : segments(fileName))
+            replay(segment, consumer);
+
+        Path path = Path.of(fileName(fileName));
+        if (Files.exists(path))
+            replay(path, consumer);
+    }
+
+    private static void replay(Path path, Consumer<CsvTokenizer> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            int end = bytes.limit();
+            while (end > 0 && bytes.get(end - 1) != '\n') end--;
+
+            int start = 0;
+            while (start < end && bytes.get(start) != '\n') start++;
+
+            if (start >= end) return;
+            bytes.position(start + 1).limit(end);
+
+            CsvTokenizer tokenizer = new CsvTokenizer(bytes);
+            while (tokenizer.nextLine()) {
+                consumer.accept(tokenizer);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shortest chain of parent, child and spouse links between two people, and the name of the relation it makes.
+ * The search grows a breadth-first frontier from both people, always the smaller one, so finding people d links apart
+ * touches the people within about d/2 links of each instead of everybody within d links of one.
+ */
+public class Kinship {
+
+    /**
+     * People further apart are not searched for, the name of such a relation would not mean much anyway.
+     */
+    public static final int MAX_LENGTH = 16;
+
+    private static final Pattern BLOOD = Pattern.compile("U*D*");
+
+    private static final Pattern SEGMENT = Pattern.compile("S|U+D*|D+");
+
+    private record Visit(Person previous, int depth) {
+    }
+
+    private Kinship() {
+    }
+
+    /**
+     * Returns the people on a shortest path from one person to the other, both included,
+     * or null if they are not connected by at most MAX_LENGTH links.
+     * Only people in the store are on a path, removed people are still linked from the ones they knew.
+     */
+    public static List<Person> path(PersonStore people, Person from, Person to) {
+        if (!stored(people, from) || !stored(people, to)) return null;
+        if (from == to) return List.of(from);
+
+        Map<Person, Visit> forward = new HashMap<>(), backward = new HashMap<>();
+        forward.put(from, new Visit(null, 0));
+        backward.put(to, new Visit(null, 0));
+        List<Person> forwardLevel = List.of(from), backwardLevel = List.of(to);
+
+        for (int length = 0; length < MAX_LENGTH && !forwardLevel.isEmpty() && !backwardLevel.isEmpty(); length++) {
+            boolean growForward = forwardLevel.size() <= backwardLevel.size();
+            Map<Person, Visit> visits = growForward ? forward : backward, others = growForward ? backward : forward;
+
+            // Every meeting of this level is looked at, one found early may be longer than one found later
+            List<Person> next = new ArrayList<>();
+            Person meeting = null;
+            int shortest = Integer.MAX_VALUE;
+            for (Person person : growForward ? forwardLevel : backwardLevel) {
+                int depth = visits.get(person).depth + 1;
+                for (Person neighbour : neighbours(person)) {
+                    if (!stored(people, neighbour) || visits.containsKey(neighbour)) continue;
+                    visits.put(neighbour, new Visit(person, depth));
+                    next.add(neighbour);
+
+                    Visit other = others.get(neighbour);
+                    if (other != null && depth + other.depth < shortest) {
+                        shortest = depth + other.depth;
+                        meeting = neighbour;
+                    }
+                }
+            }
+            if (meeting != null) return shortest <= MAX_LENGTH ? join(meeting, forward, backward) : null;
+
+            if (growForward) forwardLevel = next;
+            else backwardLevel = next;
+        }
+        return null;
+    }
+
+    /**
+     * Name of what the last person of the path is to the first one, like "Second Cousin Once Removed" or "Sister in Law".
+     * Paths that are not one of the named relations are named link by link, like "Child's Father".
+     */
+    public static String name(List<Person> path) {
+        if (path.size() < 2) return "Self";
+
+        StringBuilder hops = new StringBuilder();
+        for (int i = 0; i + 1 < path.size(); i++) hops.append(code(path.get(i), path.get(i + 1)));
+        String links = hops.toString();
+        Person last = path.get(path.size() - 1);
+
+        if (links.equals("S")) return "Spouse";
+        if (BLOOD.matcher(links).matches()) return relative(path, 0, path.size() - 1, false).name();
+        if (links.startsWith("S") && BLOOD.matcher(links.substring(1)).matches())
+            return relative(path, 1, path.size() - 1, true).name();
+        if (links.endsWith("S") && BLOOD.matcher(links.substring(0, links.length() - 1)).matches()) {
+            FamilyWalk.Relative relative = relative(path, 0, path.size() - 2, false);
+            return new FamilyWalk.Relative(last, FamilyWalk.Relation.IN_LAW, relative.up(), relative.down(), false, relative.person(), FamilyWalk.Hop.SPOUSE).name();
+        }
+
+        List<String> names = new ArrayList<>();
+        Matcher segment = SEGMENT.matcher(links);
+        while (segment.find()) {
+            if (segment.group().equals("S")) names.add("Spouse");
+            else names.add(relative(path, segment.start(), segment.end(), false).name());
+        }
+        return String.join("'s ", names);
+    }
+
+    /**
+     * The link from one person of a path to the next.
+     */
+    public static FamilyWalk.Hop hop(Person from, Person next) {
+        if (from.getMother() == next) return FamilyWalk.Hop.MOTHER;
+        if (from.getFather() == next) return FamilyWalk.Hop.FATHER;
+        if (next.getMother() == from || next.getFather() == from) return FamilyWalk.Hop.CHILD;
+        return FamilyWalk.Hop.SPOUSE;
+    }
+
+    /**
+     * U for a link up to a parent, D down to a child and S to a spouse.
+     */
+    private static char code(Person from, Person next) {
+        return switch (hop(from, next)) {
+            case CHILD -> 'D';
+            case SPOUSE -> 'S';
+            default -> 'U';
+        };
+    }
+
+    /**
+     * The blood relation the person at index to is to the person at index from, the links between them go up, then down.
+     */
+    private static FamilyWalk.Relative relative(List<Person> path, int from, int to, boolean spouseSide) {
+        int up = 0, down = 0;
+        for (int i = from; i < to; i++) {
+            if (hop(path.get(i), path.get(i + 1)) == FamilyWalk.Hop.CHILD) down++;
+            else up++;
+        }
+        FamilyWalk.Relation relation = spouseSide ? FamilyWalk.Relation.IN_LAW : FamilyWalk.Relation.of(up, down);
+        return new FamilyWalk.Relative(path.get(to), relation, up, down, spouseSide, path.get(to - 1), hop(path.get(to - 1), path.get(to)));
+    }
+
+    private static List<Person> neighbours(Person person) {
+        List<Person> neighbours = new ArrayList<>(person.getChildren().size() + 3);
+        if (person.getMother() != null) neighbours.add(person.getMother());
+        if (person.getFather() != null) neighbours.add(person.getFather());
+        neighbours.addAll(person.getChildren());
+        if (person.getSpouse() != null) neighbours.add(person.getSpouse());
+        return neighbours;
+    }
+
+    private static boolean stored(PersonStore people, Person person) {
+        return person != null && people.bySlot(person.getSlot()) == person;
+    }
+
+    private static List<Person> join(Person meeting, Map<Person, Visit> forward, Map<Person, Visit> backward) {
+        List<Person> path = new ArrayList<>();
+        for (Person person = meeting; person != null; person = forward.get(person).previous) path.add(person);
+        Collections.reverse(path);
+        for (Person person = backward.get(meeting).previous; person != null; person = backward.get(person).previous) path.add(person);
+        return path;
+    }
+}
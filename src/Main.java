@@ -5,17 +5,28 @@ public class Main {
     public static void main(String[] args) throws IOException {
         Cemetree c = new Cemetree();
         final String FILENAME = "saved";
+        final long SAVE_INTERVAL_SECONDS = 30;
 
         try {
-            c.loadFromFile(FILENAME);
+            if (c.hasSnapshot(FILENAME))
+                c.loadSnapshot(FILENAME);
+            else
+                c.loadFromFile(FILENAME, true);
+
+            c.openJournal(FILENAME);
         } catch (IOException ignored) {
             return;
         }
 
+        c.startBackgroundSave(FILENAME, SAVE_INTERVAL_SECONDS);
         c.consoleMode();
 
         try {
-            c.saveToFile(FILENAME);
+            c.stopBackgroundSave(FILENAME);
+            // Keep the snapshot in step with the saved files for a fast next start
+            if (!c.hasSnapshot(FILENAME))
+                c.saveSnapshot(FILENAME);
+            c.closeJournal();
         } catch (IOException e) {
             System.out.println("Failed to save");
             throw e;
@@ -3,22 +3,38 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
+import java.util.function.ToIntFunction;
 
 public class Person {
-    private String name, surname, id, sex;
+    public static final long NO_ID = -1;
+
+    /**
+     * Shared dictionaries of the repeated attributes, names and surnames share one.
+     */
+    public static final StringPool NAMES = new StringPool(), SEXES = new StringPool(), DEATH_CAUSES = new StringPool();
+
+    private int name = StringPool.NONE, surname = StringPool.NONE, sex = StringPool.NONE;
+
+    private long id;
     private Date birthDate, deathDate;
     boolean dead, admin;
 
     private Cemetery cemetery;
 
-    private String deathCause;
+    private int deathCause = StringPool.NONE;
 
-    private String motherId, fatherId, spouseId;
+    private long motherId = NO_ID, fatherId = NO_ID, spouseId = NO_ID;
 
     private Person mother, father, spouse;
 
     private final List<Person> children = new ArrayList<>();
 
+    private Shard shard;
+
+    private PersonStore store;
+
+    private int slot = -1;
+
     public static final List<ConsoleReader.Question> QUESTIONS = List.of(
             new ConsoleReader.Question("ID", "[0-9]{11}", "Invalid ID.", true),
             new ConsoleReader.Question("Name", "^[\\p{L}\\p{M}'-]{2,64}$", "Invalid name. Must contain only letters, 2-64 characters.", true),
@@ -34,12 +50,12 @@ public class Person {
             new ConsoleReader.Question("Cemetery ID", "[0-9]{2}-[0-9]{3}", "Invalid cemetery ID. Must be in the format 'XX-XXX", true)
     );
 
-    Person(String id, String name, String surname, String sex, boolean admin, boolean dead, String deathCause, Cemetery cemetery, Date birthDate, Date deathDate, String motherId, String fatherId, String spouseId) {
-        this.name = name;
-        this.surname = surname;
+    Person(long id, String name, String surname, String sex, boolean admin, boolean dead, String deathCause, Cemetery cemetery, Date birthDate, Date deathDate, long motherId, long fatherId, long spouseId) {
+        this.name = NAMES.intern(name);
+        this.surname = NAMES.intern(surname);
         this.id = id;
         this.admin = admin;
-        this.sex = sex;
+        this.sex = SEXES.intern(sex);
         this.birthDate = birthDate;
         this.motherId = motherId;
         this.fatherId = fatherId;
@@ -47,35 +63,38 @@ public class Person {
         this.dead = dead;
         this.deathDate = deathDate;
         this.cemetery = cemetery;
-        this.deathCause = deathCause;
+        this.deathCause = DEATH_CAUSES.intern(deathCause);
     }
 
+    /**
+     * Search filter, null attributes match everything. Strings are only looked up so searching does not grow the dictionaries.
+     */
     Person(String id, String name, String surname, String sex, String deathCause, Cemetery cemetery, Date birthDate, Date deathDate) {
-        this.name = name;
-        this.surname = surname;
-        this.id = id;
-        this.sex = sex;
+        this.name = NAMES.findIgnoreCase(name);
+        this.surname = NAMES.findIgnoreCase(surname);
+        this.id = parseIdOrNone(id);
+        this.sex = SEXES.findIgnoreCase(sex);
         this.cemetery = cemetery;
-        this.deathCause = deathCause;
+        this.deathCause = DEATH_CAUSES.findIgnoreCase(deathCause);
         this.birthDate = birthDate;
         this.deathDate = deathDate;
     }
 
-    Person(ConsoleReader reader, Map<String, Person> people, Map<String, Cemetery> cemeteries) throws CancellationException {
+    Person(ConsoleReader reader, PersonStore people, Map<String, Cemetery> cemeteries) throws CancellationException {
         String id;
         for (id = reader.getAnswer(QUESTIONS.get(0), 12); people.containsKey(id); id = reader.getAnswer(QUESTIONS.get(0), 12)) {
             System.out.println("ID already exists. Please enter a different ID.");
         }
-        this.id = id;
+        this.id = parseId(id);
 
-        this.name = reader.getAnswer(QUESTIONS.get(1), 12).toUpperCase();
-        this.surname = reader.getAnswer(QUESTIONS.get(2), 12).toUpperCase();
-        this.sex = reader.getAnswer(QUESTIONS.get(3), 12).matches("(?i)^(male|m)$") ? "Male" : "Female";
+        this.name = NAMES.intern(reader.getAnswer(QUESTIONS.get(1), 12).toUpperCase(Collation.TURKISH));
+        this.surname = NAMES.intern(reader.getAnswer(QUESTIONS.get(2), 12).toUpperCase(Collation.TURKISH));
+        this.sex = SEXES.intern(reader.getAnswer(QUESTIONS.get(3), 12).matches("(?i)^(male|m)$") ? "Male" : "Female");
         this.birthDate = new Date(reader.getAnswer(QUESTIONS.get(4), 12));
 
-        this.motherId = reader.getAnswer(QUESTIONS.get(5), 12);
-        this.fatherId = reader.getAnswer(QUESTIONS.get(6), 12);
-        this.spouseId = reader.getAnswer(QUESTIONS.get(7), 12);
+        this.motherId = parseId(reader.getAnswer(QUESTIONS.get(5), 12));
+        this.fatherId = parseId(reader.getAnswer(QUESTIONS.get(6), 12));
+        this.spouseId = parseId(reader.getAnswer(QUESTIONS.get(7), 12));
 
         this.dead = reader.getAnswer(QUESTIONS.get(8), 12).matches("(?i)^(true|t)$");
         if (this.dead) {
@@ -94,18 +113,25 @@ public class Person {
 
             deathDate = new Date(reader.getAnswer(QUESTIONS.get(9), labelSize));
         }
-        this.deathDate = deathDate;
 
-        this.deathCause = reader.getAnswer(QUESTIONS.get(10), labelSize);
+        String deathCause = reader.getAnswer(QUESTIONS.get(10), labelSize);
 
         String cemeteryId;
         for (cemeteryId = reader.getAnswer(QUESTIONS.get(11), labelSize); !cemeteries.containsKey(cemeteryId); cemeteryId = reader.getAnswer(QUESTIONS.get(11), labelSize)) {
             System.out.println("Cemetery ID does not exist. Please enter a different ID.");
         }
-        this.cemetery = cemeteries.get(cemeteryId);
-        this.cemetery.incrementCount();
+        setDead(deathDate, deathCause, cemeteries.get(cemeteryId));
+    }
+
+    public void setDead(Date deathDate, String deathCause, Cemetery cemetery) {
+        this.deathDate = deathDate;
+        this.deathCause = DEATH_CAUSES.intern(deathCause);
+        this.cemetery = cemetery;
+        if (this.cemetery != null)
+            this.cemetery.incrementCount();
 
         this.dead = true;
+        shardChanged();
     }
 
     public void setDead(ConsoleReader reader, Map<String, Cemetery> cemeteries) throws CancellationException {
@@ -119,22 +145,23 @@ public class Person {
     public void setAlive() {
         this.dead = false;
         this.deathDate = null;
-        this.deathCause = null;
+        this.deathCause = StringPool.NONE;
         if (this.cemetery != null)
             this.cemetery.decrementCount();
         this.cemetery = null;
+        shardChanged();
     }
 
-    public void edit(ConsoleReader reader, Map<String, Person> people, Map<String, Cemetery> cemeteries) throws CancellationException {
+    public void edit(ConsoleReader reader, PersonStore people, Map<String, Cemetery> cemeteries) throws CancellationException {
         boolean editDeath = false;
         boolean removeDeathInfo = false;
 
         String name, surname, sex, birthDateStr, motherId, fatherId, spouseId, dead, deathDateStr, deathCause, cemeteryId;
         Date birthDate, deathDate;
 
-        name = reader.getAnswer(QUESTIONS.get(1).withLabel("Name (" + this.name + ")").withRequired(false), 24);
-        surname = reader.getAnswer(QUESTIONS.get(2).withLabel("Surname (" + this.surname + ")").withRequired(false), 24);
-        sex = reader.getAnswer(QUESTIONS.get(3).withLabel("Sex (" + this.sex + ")").withRequired(false), 24);
+        name = reader.getAnswer(QUESTIONS.get(1).withLabel("Name (" + getName() + ")").withRequired(false), 24);
+        surname = reader.getAnswer(QUESTIONS.get(2).withLabel("Surname (" + getSurname() + ")").withRequired(false), 24);
+        sex = reader.getAnswer(QUESTIONS.get(3).withLabel("Sex (" + getSex() + ")").withRequired(false), 24);
         birthDateStr = reader.getAnswer(QUESTIONS.get(4).withLabel("Birth Date (" + this.birthDate + ")").withRequired(false), 24);
         birthDate = birthDateStr.isBlank() ? this.birthDate : new Date(birthDateStr);
         while (birthDate != null && !birthDate.equals(this.birthDate) && birthDate.after(new Date())) {
@@ -143,9 +170,9 @@ public class Person {
             birthDate = birthDateStr.isBlank() ? this.birthDate : new Date(birthDateStr);
         }
 
-        motherId = reader.getAnswer(QUESTIONS.get(5).withLabel("Mother ID (" + this.motherId + ")").withRequired(false), 24);
-        fatherId = reader.getAnswer(QUESTIONS.get(6).withLabel("Father ID (" + this.fatherId + ")").withRequired(false), 24);
-        spouseId = reader.getAnswer(QUESTIONS.get(7).withLabel("Spouse ID (" + this.spouseId + ")").withRequired(false), 24);
+        motherId = reader.getAnswer(QUESTIONS.get(5).withLabel("Mother ID (" + getMotherId() + ")").withRequired(false), 24);
+        fatherId = reader.getAnswer(QUESTIONS.get(6).withLabel("Father ID (" + getFatherId() + ")").withRequired(false), 24);
+        spouseId = reader.getAnswer(QUESTIONS.get(7).withLabel("Spouse ID (" + getSpouseId() + ")").withRequired(false), 24);
         dead = reader.getAnswer(QUESTIONS.get(8).withLabel("Dead (" + this.dead + ")").withRequired(false), 24);
 
         if (dead.matches("(?i)^(true|t)$")) {
@@ -162,18 +189,18 @@ public class Person {
                 removeDeathInfo = true;
         }
 
-        this.name = name.isBlank() ? this.name : name;
-        this.surname = surname.isBlank() ? this.surname : surname;
+        this.name = name.isBlank() ? this.name : NAMES.intern(name);
+        this.surname = surname.isBlank() ? this.surname : NAMES.intern(surname);
         if (!sex.isBlank()) {
             if (!sex.matches("(?i)^(male|m)$"))
-                this.sex = "Male";
+                this.sex = SEXES.intern("Male");
             else if (!sex.matches("(?i)^(female|f)$"))
-                this.sex = "Female";
+                this.sex = SEXES.intern("Female");
         }
         this.birthDate = birthDate;
-        this.motherId = motherId.isBlank() ? this.motherId : motherId;
-        this.fatherId = fatherId.isBlank() ? this.fatherId : fatherId;
-        this.spouseId = spouseId.isBlank() ? this.spouseId : spouseId;
+        this.motherId = motherId.isBlank() ? this.motherId : parseId(motherId);
+        this.fatherId = fatherId.isBlank() ? this.fatherId : parseId(fatherId);
+        this.spouseId = spouseId.isBlank() ? this.spouseId : parseId(spouseId);
 
         removeConnections();
         connect(people);
@@ -190,30 +217,71 @@ public class Person {
                 deathDate = new Date(reader.getAnswer(QUESTIONS.get(9).withLabel("Death Date (" + this.deathDate + ")").withRequired(false), 24));
             }
 
-            deathCause = reader.getAnswer(QUESTIONS.get(10).withLabel("Death Cause (" + this.deathCause + ")").withRequired(false), 24);
+            deathCause = reader.getAnswer(QUESTIONS.get(10).withLabel("Death Cause (" + getDeathCause() + ")").withRequired(false), 24);
             cemeteryId = reader.getAnswer(QUESTIONS.get(11).withLabel("Cemetery ID (" + this.cemetery.getId() + ")").withRequired(false), 24);
 
             this.deathDate = deathDate;
-            this.deathCause = deathCause.isBlank() ? this.deathCause : deathCause;
+            this.deathCause = deathCause.isBlank() ? this.deathCause : DEATH_CAUSES.intern(deathCause);
             this.cemetery = cemeteryId.isBlank() ? this.cemetery : cemeteries.get(cemeteryId);
         } else if (removeDeathInfo) {
             setAlive();
         }
+        shardChanged();
+    }
+
+    /**
+     * Replaces the attributes of this person with the ones of the given person, keeping its connections.
+     */
+    public void copyFrom(Person person) {
+        this.name = person.name;
+        this.surname = person.surname;
+        this.sex = person.sex;
+        this.admin = person.admin;
+        this.dead = person.dead;
+        this.deathCause = person.deathCause;
+        this.cemetery = person.cemetery;
+        this.birthDate = person.birthDate;
+        this.deathDate = person.deathDate;
+        this.motherId = person.motherId;
+        this.fatherId = person.fatherId;
+        this.spouseId = person.spouseId;
+        shardChanged();
+    }
+
+    /**
+     * Moves this person to the shard of its current cemetery, or marks its shard dirty if it stays.
+     */
+    private void shardChanged() {
+        if (store != null) store.update(this);
+        if (shard == null) return;
+
+        Shard target = shard.getRegistry().of(cemetery);
+        if (target != shard) {
+            shard.remove(this);
+            target.add(this);
+        } else {
+            shard.markDirty();
+        }
+    }
+
+    public void markDirty() {
+        if (store != null) store.update(this);
+        if (shard != null) shard.markDirty();
     }
 
-    public void connect(Map<String, Person> people) {
-        if (this.hasMotherId() && people.get(this.getMotherId()) != null) {
-            Person mother = people.get(this.getMotherId());
+    public void connect(PersonStore people) {
+        Person mother = people.get(motherId);
+        if (mother != null) {
             this.setMother(mother);
             mother.addChild(this);
         }
-        if (this.hasFatherId() && people.get(this.getFatherId()) != null) {
-            Person father = people.get(this.getFatherId());
+        Person father = people.get(fatherId);
+        if (father != null) {
             this.setFather(father);
             father.addChild(this);
         }
-        if (this.hasSpouseId() && people.get(this.getSpouseId()) != null) {
-            Person spouse = people.get(this.getSpouseId());
+        if (this.hasSpouseId()) {
+            Person spouse = people.get(spouseId);
             if (spouse != null) {
                 this.setSpouse(spouse);
                 spouse.setSpouse(this);
@@ -223,11 +291,11 @@ public class Person {
             if (cemetery.count >= cemetery.CAPACITY) {
                 System.out.println("Cemetery " + cemetery.getId() + " is full. Person " + this.getName() + " " + this.getSurname() + " cannot be added.");
             } else {
-                people.put(this.getId(), this);
+                people.put(this);
                 cemetery.incrementCount();
             }
         } else {
-            people.put(this.getId(), this);
+            people.put(this);
         }
     }
 
@@ -237,7 +305,7 @@ public class Person {
         if (this.mother != null) this.mother.getChildren().remove(this);
         this.spouse = null;
         for (Person child : this.getChildren()) {
-            if (this.sex.equals("Male")) {
+            if ("Male".equals(getSex())) {
                 child.setFather(null);
             } else {
                 child.setMother(null);
@@ -246,7 +314,7 @@ public class Person {
     }
 
     public String toString() {
-        return String.format("Person(%s,%s %s)", id, name, surname);
+        return String.format("Person(%s,%s %s)", getId(), getName(), getSurname());
     }
 
     public static String toCsvHeader() {
@@ -255,19 +323,19 @@ public class Person {
 
     public String toCsvString() {
         return String.format("%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s",
-                id == null ? "" : id,
-                name == null ? "" : name,
-                surname == null ? "" : surname,
-                sex == null ? "" : sex,
+                id == NO_ID ? "" : getId(),
+                name == StringPool.NONE ? "" : getName(),
+                surname == StringPool.NONE ? "" : getSurname(),
+                sex == StringPool.NONE ? "" : getSex(),
                 admin ? "1" : "0",
                 dead ? "1" : "0",
-                deathCause == null ? "" : deathCause,
+                deathCause == StringPool.NONE ? "" : getDeathCause(),
                 cemetery == null ? "" : cemetery.getId(),
                 birthDate == null ? "" : birthDate,
                 deathDate == null ? "" : deathDate,
-                motherId == null ? "" : motherId,
-                fatherId == null ? "" : fatherId,
-                spouseId == null ? "" : spouseId
+                motherId == NO_ID ? "" : getMotherId(),
+                fatherId == NO_ID ? "" : getFatherId(),
+                spouseId == NO_ID ? "" : getSpouseId()
         );
     }
 
@@ -276,33 +344,46 @@ public class Person {
     }
 
     public String toRowString(int index) {
-        return String.format("%-3d %-12s %-12s %s", (index), name, surname, getDateString());
+        return String.format("%-3d %-12s %-12s %s", (index), getName(), getSurname(), getDateString());
+    }
+
+    /**
+     * Detail lines with the number of descendants and known ancestors, when there are any.
+     */
+    private String familyCounts() {
+        if (store == null) return "";
+        FamilyCounts counts = store.counts();
+        int descendants = counts.descendants(this), ancestors = counts.ancestors(this);
+        return (descendants > 0 ? "\nDescendants : " + descendants + " (" + counts.buriedDescendants(this) + " buried, "
+                + counts.depth(this) + (counts.depth(this) == 1 ? " generation)" : " generations)") : "") +
+                (ancestors > 0 ? "\nAncestors   : " + ancestors : "");
     }
 
     public String toDetailString(boolean admin) {
         return (admin ?
-                "ID          : " + id : "") +
-                "\nName        : " + name + " " + surname +
-                "\nSex         : " + sex +
+                "ID          : " + getId() : "") +
+                "\nName        : " + getFullName() +
+                "\nSex         : " + getSex() +
                 "\nBorn        : " + birthDate +
                 (deathDate != null ? "\nDied        : " + deathDate : "") +
-                (deathCause != null && !deathCause.isBlank() ? "\nDeath Cause : " + deathCause : "") +
+                (getDeathCause() != null && !getDeathCause().isBlank() ? "\nDeath Cause : " + getDeathCause() : "") +
                 (cemetery != null ? "\nCemetery    : " + cemetery.getName() : "") +
                 (mother != null ? "\nMother      : " + mother.getFullName() : "") +
                 (father != null ? "\nFather      : " + father.getFullName() : "") +
-                (spouse != null ? "\nSpouse      : " + spouse.getFullName() : "");
+                (spouse != null ? "\nSpouse      : " + spouse.getFullName() : "") +
+                familyCounts();
     }
 
     public boolean matches(Person filter) {
         if (filter == null) return true;
-        if (filter.name != null && !filter.name.equalsIgnoreCase(this.name)) return false;
-        if (filter.surname != null && !filter.surname.equalsIgnoreCase(this.surname)) return false;
-        if (filter.id != null && !filter.id.equals(this.id)) return false;
-        if (filter.sex != null && !filter.sex.equalsIgnoreCase(this.sex)) return false;
+        if (filter.name != StringPool.NONE && filter.name != NAMES.fold(this.name)) return false;
+        if (filter.surname != StringPool.NONE && filter.surname != NAMES.fold(this.surname)) return false;
+        if (filter.id != NO_ID && filter.id != this.id) return false;
+        if (filter.sex != StringPool.NONE && filter.sex != SEXES.fold(this.sex)) return false;
         if (filter.birthDate != null && !filter.birthDate.equals(this.birthDate)) return false;
         if (filter.deathDate != null && !filter.deathDate.equals(this.deathDate)) return false;
         if (filter.cemetery != null && !filter.cemetery.equals(this.cemetery)) return false;
-        if (filter.deathCause != null && !filter.deathCause.equalsIgnoreCase(this.deathCause)) return false;
+        if (filter.deathCause != StringPool.NONE && filter.deathCause != DEATH_CAUSES.fold(this.deathCause)) return false;
         return true;
     }
 
@@ -312,52 +393,123 @@ public class Person {
     }
 
     public static Comparator<? super Person> getComparator(String sortBy) {
-        if (sortBy.equalsIgnoreCase("id")) return Comparator.comparing(Person::getId);
-        if (sortBy.equalsIgnoreCase("name")) return Comparator.comparing(Person::getName);
-        if (sortBy.equalsIgnoreCase("surname")) return Comparator.comparing(Person::getSurname);
-        if (sortBy.equalsIgnoreCase("sex")) return Comparator.comparing(Person::getSex);
+        if (sortBy.equalsIgnoreCase("id")) return Comparator.comparingLong(Person::getIdKey);
+        if (sortBy.equalsIgnoreCase("name")) return byRank(NAMES, Person::getNameCode);
+        if (sortBy.equalsIgnoreCase("surname")) return byRank(NAMES, Person::getSurnameCode);
+        if (sortBy.equalsIgnoreCase("sex")) return byRank(SEXES, Person::getSexCode);
         if (sortBy.equalsIgnoreCase("birth_date")) return Comparator.comparing(Person::getBirthDate);
         if (sortBy.equalsIgnoreCase("death_date")) return Comparator.comparing(Person::getDeathDate);
         if (sortBy.equalsIgnoreCase("age")) return Comparator.comparing(Person::getAge);
-        if (sortBy.equalsIgnoreCase("death_cause")) return Comparator.comparing(Person::getDeathCause);
+        if (sortBy.equalsIgnoreCase("death_cause")) return byRank(DEATH_CAUSES, Person::getDeathCauseCode);
         if (sortBy.equalsIgnoreCase("cemetery_id")) return Comparator.comparing((Person::getCemeteryId));
-        return Comparator.comparing(Person::getId);
+        return Comparator.comparingLong(Person::getIdKey);
+    }
+
+    /**
+     * Orders by the Turkish alphabetical rank of a dictionary value, people without the value come first.
+     */
+    private static Comparator<Person> byRank(StringPool pool, ToIntFunction<Person> code) {
+        int[] ranks = pool.ranks();
+        return Comparator.comparingInt(person -> StringPool.rank(ranks, code.applyAsInt(person)));
+    }
+
+    /**
+     * Parses an 11 digit ID without creating any objects. Returns NO_ID for null or blank text.
+     */
+    public static long parseId(CharSequence text) {
+        if (text == null) return NO_ID;
+
+        int start = 0, end = text.length();
+        while (start < end && text.charAt(start) == ' ') start++;
+        while (end > start && text.charAt(end - 1) == ' ') end--;
+        if (start == end) return NO_ID;
+
+        if (end - start != 11) throw new IllegalArgumentException("Invalid ID: " + text);
+        long id = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') throw new IllegalArgumentException("Invalid ID: " + text);
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * Like parseId, but returns NO_ID for anything that is not a valid ID.
+     */
+    public static long parseIdOrNone(CharSequence text) {
+        try {
+            return parseId(text);
+        } catch (IllegalArgumentException e) {
+            return NO_ID;
+        }
+    }
+
+    public static String formatId(long id) {
+        if (id == NO_ID) return null;
+
+        char[] digits = new char[11];
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + id % 10);
+            id /= 10;
+        }
+        return new String(digits);
     }
 
     public String getName() {
+        return NAMES.value(name);
+    }
+
+    public int getNameCode() {
         return name;
     }
 
     public void setName(String name) {
-        this.name = name;
+        this.name = NAMES.intern(name);
+        markDirty();
     }
 
     public String getSurname() {
+        return NAMES.value(surname);
+    }
+
+    public int getSurnameCode() {
         return surname;
     }
 
     public String getFullName() {
-        return name + " " + surname;
+        return getName() + " " + getSurname();
     }
 
     public void setSurname(String surname) {
-        this.surname = surname;
+        this.surname = NAMES.intern(surname);
+        markDirty();
     }
 
     public String getId() {
+        return formatId(id);
+    }
+
+    public long getIdKey() {
         return id;
     }
 
     public void setId(String id) {
-        this.id = id;
+        this.id = parseId(id);
+        markDirty();
     }
 
     public String getSex() {
+        return SEXES.value(sex);
+    }
+
+    public int getSexCode() {
         return sex;
     }
 
     public void setSex(String sex) {
-        this.sex = sex;
+        this.sex = SEXES.intern(sex);
+        markDirty();
     }
 
     public boolean isAdmin() {
@@ -366,6 +518,7 @@ public class Person {
 
     public void setAdmin(boolean admin) {
         this.admin = admin;
+        markDirty();
     }
 
     public Date getBirthDate() {
@@ -374,6 +527,7 @@ public class Person {
 
     public void setBirthDate(Date birthDate) {
         this.birthDate = birthDate;
+        markDirty();
     }
 
     public Date getDeathDate() {
@@ -382,16 +536,28 @@ public class Person {
 
     public void setDeathDate(Date deathDate) {
         this.deathDate = deathDate;
+        markDirty();
     }
 
     public double getAge() {
         if (deathDate == null) {
-            return (new Date().getTimeInMillis() - birthDate.getTimeInMillis()) / 1000.0 / 60.0 / 60.0 / 24.0 / 365.25;
+            return (new Date().getEpochMinute() - birthDate.getEpochMinute()) / 60.0 / 24.0 / 365.25;
         } else {
-            return (deathDate.getTimeInMillis() - birthDate.getTimeInMillis()) / 1000.0 / 60.0 / 60.0 / 24.0 / 365.25;
+            return (deathDate.getEpochMinute() - birthDate.getEpochMinute()) / 60.0 / 24.0 / 365.25;
         }
     }
 
+    /**
+     * Returns true if the lifespan of this person, up to today if alive, overlaps the period. Both ends are inclusive.
+     * For the dead without a death date only the birth date is known.
+     */
+    public boolean livedBetween(Date from, Date to) {
+        if (birthDate == null || birthDate.after(to)) return false;
+
+        Date end = deathDate != null ? deathDate : dead ? birthDate : new Date();
+        return !end.before(from);
+    }
+
     public String getDateString() {
         return (birthDate == null ? "unknown" : birthDate.toString()) + " - " + (deathDate == null ? "present" : deathDate.toString());
     }
@@ -402,6 +568,7 @@ public class Person {
 
     public void setDead(boolean dead) {
         this.dead = dead;
+        markDirty();
     }
 
     public Cemetery getGraveyard() {
@@ -410,46 +577,67 @@ public class Person {
 
     public void setGraveyard(Cemetery cemetery) {
         this.cemetery = cemetery;
+        shardChanged();
     }
 
     public String getDeathCause() {
+        return DEATH_CAUSES.value(deathCause);
+    }
+
+    public int getDeathCauseCode() {
         return deathCause;
     }
 
     public void setDeathCause(String deathCause) {
-        this.deathCause = deathCause;
+        this.deathCause = DEATH_CAUSES.intern(deathCause);
+        markDirty();
     }
 
     public String getMotherId() {
+        return formatId(motherId);
+    }
+
+    public long getMotherIdKey() {
         return motherId;
     }
 
     public void setMotherId(String motherId) {
-        this.motherId = motherId;
+        this.motherId = parseId(motherId);
+        markDirty();
     }
 
     public String getFatherId() {
+        return formatId(fatherId);
+    }
+
+    public long getFatherIdKey() {
         return fatherId;
     }
 
     public void setFatherId(String fatherId) {
-        this.fatherId = fatherId;
+        this.fatherId = parseId(fatherId);
+        markDirty();
     }
 
     public String getMotherId(Person person) {
-        return person.motherId;
+        return person.getMotherId();
     }
 
     public String getFatherId(Person person) {
-        return person.fatherId;
+        return person.getFatherId();
     }
 
     public String getSpouseId() {
+        return formatId(spouseId);
+    }
+
+    public long getSpouseIdKey() {
         return spouseId;
     }
 
     public void setSpouseId(String spouseId) {
-        this.spouseId = spouseId;
+        this.spouseId = parseId(spouseId);
+        markDirty();
     }
 
     public Cemetery getCemetery() {
@@ -458,6 +646,7 @@ public class Person {
 
     public void setCemetery(Cemetery cemetery) {
         this.cemetery = cemetery;
+        shardChanged();
     }
 
     public String getCemeteryId() {
@@ -469,7 +658,10 @@ public class Person {
     }
 
     public void setMother(Person mother) {
+        Person previous = this.mother;
+        if (store != null) store.linking(this);
         this.mother = mother;
+        if (store != null) store.linked(this, previous);
     }
 
     public Person getFather() {
@@ -477,7 +669,10 @@ public class Person {
     }
 
     public void setFather(Person father) {
+        Person previous = this.father;
+        if (store != null) store.linking(this);
         this.father = father;
+        if (store != null) store.linked(this, previous);
     }
 
     public Person getSpouse() {
@@ -489,15 +684,15 @@ public class Person {
     }
 
     public boolean hasMotherId() {
-        return motherId != null;
+        return motherId != NO_ID;
     }
 
     public boolean hasFatherId() {
-        return fatherId != null;
+        return fatherId != NO_ID;
     }
 
     public boolean hasSpouseId() {
-        return spouseId != null;
+        return spouseId != NO_ID;
     }
 
     public void addChild(Person child) {
@@ -507,4 +702,24 @@ public class Person {
     public List<Person> getChildren() {
         return children;
     }
+
+    public Shard getShard() {
+        return shard;
+    }
+
+    void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * Slot of this person in its PersonStore, or -1 if it is not stored.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    void setStore(PersonStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
 }
@@ -0,0 +1,695 @@
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Secondary indexes over the attributes people are searched by, keyed by slot of the PersonStore.
+ * Each index remembers the key a slot was filed under, so a changed person is moved with update.
+ * Names have posting lists, the attributes with few distinct values have bitmaps that are intersected.
+ * The planner picks the smallest posting list or date range the filter allows, keeps the slots in the bitmaps
+ * and only runs Person.matches on those.
+ */
+public class PersonIndex {
+
+    private final PersonStore store;
+
+    private final HashIndex<Integer> names = new HashIndex<>(person -> code(Person.NAMES.fold(person.getNameCode())));
+
+    private final HashIndex<Integer> surnames = new HashIndex<>(person -> code(Person.NAMES.fold(person.getSurnameCode())));
+
+    private final List<HashIndex<?>> indexes = List.of(names, surnames);
+
+    private final BitmapIndex<Integer> deathCauses = new BitmapIndex<>(person -> code(Person.DEATH_CAUSES.fold(person.getDeathCauseCode())));
+
+    private final BitmapIndex<Integer> sexes = new BitmapIndex<>(person -> code(Person.SEXES.fold(person.getSexCode())));
+
+    private final BitmapIndex<Cemetery> cemeteries = new BitmapIndex<>(Person::getCemetery);
+
+    private final BitmapIndex<Boolean> dead = new BitmapIndex<>(Person::isDead);
+
+    private final List<BitmapIndex<?>> bitmapIndexes = List.of(deathCauses, sexes, cemeteries, dead);
+
+    private final SortedIndex deathDates;
+
+    private final IntervalIndex lifespans;
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    /**
+     * Birth and death of every slot in epoch minutes, NO_DATE without one, so ages are summed without loading people.
+     */
+    private int[] births = new int[16], deaths = new int[16];
+
+    private final TrigramIndex nameGrams = new TrigramIndex(Person.NAMES);
+
+    /**
+     * Fold codes of the name dictionary by their value. Names nobody has any more stay in it with empty postings.
+     */
+    private final PrefixIndex<Integer> namePrefixes = new PrefixIndex<>();
+
+    private int prefixed;
+
+    PersonIndex(PersonStore store) {
+        this.store = store;
+        this.deathDates = new SortedIndex(store, person -> person.getDeathDate() == null ? SortedIndex.NONE : person.getDeathDate().getEpochMinute());
+        this.lifespans = new IntervalIndex(store);
+    }
+
+    public void add(int slot, Person person) {
+        for (HashIndex<?> index : indexes) index.add(slot, person);
+        for (BitmapIndex<?> index : bitmapIndexes) index.add(slot, person);
+        deathDates.add(slot, person);
+        lifespans.add(slot, person);
+        setDates(slot, person);
+    }
+
+    public void remove(int slot) {
+        for (HashIndex<?> index : indexes) index.remove(slot);
+        for (BitmapIndex<?> index : bitmapIndexes) index.remove(slot);
+        deathDates.remove(slot);
+        lifespans.remove(slot);
+        births[slot] = deaths[slot] = NO_DATE;
+    }
+
+    public void update(int slot, Person person) {
+        for (HashIndex<?> index : indexes) index.update(slot, person);
+        for (BitmapIndex<?> index : bitmapIndexes) index.update(slot, person);
+        deathDates.update(slot, person);
+        lifespans.update(slot, person);
+        setDates(slot, person);
+    }
+
+    private void setDates(int slot, Person person) {
+        if (slot >= births.length) {
+            births = Arrays.copyOf(births, Math.max(slot + 1, births.length * 2));
+            deaths = Arrays.copyOf(deaths, births.length);
+        }
+        births[slot] = person.getBirthDate() == null ? NO_DATE : person.getBirthDate().getEpochMinute();
+        deaths[slot] = person.getDeathDate() == null ? NO_DATE : person.getDeathDate().getEpochMinute();
+    }
+
+    /**
+     * Sum of the ages in years of the people in the slots, like Person.getAge: to the death date, or to now without one.
+     * People without a birth date are left out.
+     */
+    public double sumOfAges(Bitmap slots) {
+        int now = new Date().getEpochMinute();
+        long minutes = 0;
+        for (int slot : slots.toArray()) {
+            if (births[slot] == NO_DATE) continue;
+            minutes += (deaths[slot] == NO_DATE ? now : deaths[slot]) - births[slot];
+        }
+        return minutes / 60.0 / 24.0 / 365.25;
+    }
+
+    /**
+     * Returns the people that can match the filter, are dead if deadOnly, died strictly between diedAfter and diedBefore and lived
+     * between livedFrom and livedTo (when those are not null), in slot order, or null if no index applies and every person has to be checked.
+     */
+    public List<Person> candidates(Person filter, boolean deadOnly, Date diedAfter, Date diedBefore, Date livedFrom, Date livedTo) {
+        if (filter.getIdKey() != Person.NO_ID) {
+            Person person = store.get(filter.getIdKey());
+            return person == null ? List.of() : List.of(person);
+        }
+
+        // A filter value that is not in a dictionary matches nobody
+        if (filter.getNameCode() == StringPool.MISSING || filter.getSurnameCode() == StringPool.MISSING
+                || filter.getDeathCauseCode() == StringPool.MISSING || filter.getSexCode() == StringPool.MISSING)
+            return List.of();
+
+        Postings best = null;
+        best = smaller(best, names, code(filter.getNameCode()));
+        best = smaller(best, surnames, code(filter.getSurnameCode()));
+
+        Bitmap attributes = null;
+        attributes = intersect(attributes, deathCauses, code(filter.getDeathCauseCode()));
+        attributes = intersect(attributes, sexes, code(filter.getSexCode()));
+        attributes = intersect(attributes, cemeteries, filter.getCemetery());
+        if (deadOnly) attributes = intersect(attributes, dead, Boolean.TRUE);
+
+        int[] slots = best != null ? keep(Arrays.copyOf(best.slots, best.size), attributes) : attributes != null ? attributes.toArray() : null;
+        if (diedAfter != null && diedBefore != null) {
+            int from = deathDates.lowerBound(diedAfter.getEpochMinute() + 1L);
+            int to = deathDates.lowerBound(diedBefore.getEpochMinute());
+            if (slots == null || to - from < slots.length)
+                slots = keep(deathDates.slots(from, to), attributes);
+        }
+        if (livedFrom != null && livedTo != null) {
+            // The overlap search gives up as soon as it finds more people than the best candidates so far
+            int[] lived = lifespans.overlapping(livedFrom.getEpochMinute(), livedTo.getEpochMinute(), slots == null ? Integer.MAX_VALUE : slots.length);
+            if (lived != null) slots = keep(lived, attributes);
+        }
+        if (slots == null) return null;
+        Arrays.sort(slots);
+
+        List<Person> result = new ArrayList<>(slots.length);
+        for (int slot : slots) result.add(store.bySlot(slot));
+        return result;
+    }
+
+    /**
+     * Returns the people whose name and surname (those that are not null) are within a few typos of the given ones,
+     * closest first and in slot order among equally close ones. The distances of name and surname add up.
+     */
+    public List<Person> closest(String name, String surname) {
+        Map<Integer, Integer> nameDistances = name == null ? null : nameGrams.search(name);
+        Map<Integer, Integer> surnameDistances = surname == null ? null : nameGrams.search(surname);
+
+        // Walk the postings of the side with fewer people and look the other side up
+        boolean byName = nameDistances != null
+                && (surnameDistances == null || count(names, nameDistances.keySet()) <= count(surnames, surnameDistances.keySet()));
+        HashIndex<Integer> index = byName ? names : surnames;
+        Map<Integer, Integer> distances = byName ? nameDistances : surnameDistances;
+        Map<Integer, Integer> others = byName ? surnameDistances : nameDistances;
+
+        long[] ranked = new long[count(index, distances.keySet())];
+        int size = 0;
+        for (Map.Entry<Integer, Integer> entry : distances.entrySet()) {
+            Postings postings = index.get(entry.getKey());
+            for (int i = 0; i < postings.size; i++) {
+                int slot = postings.slots[i];
+                int distance = entry.getValue();
+                if (others != null) {
+                    Person person = store.bySlot(slot);
+                    Integer other = others.get(Person.NAMES.fold(byName ? person.getSurnameCode() : person.getNameCode()));
+                    if (other == null) continue;
+                    distance += other;
+                }
+                ranked[size++] = (long) distance << 32 | slot;
+            }
+        }
+        Arrays.sort(ranked, 0, size);
+
+        List<Person> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) result.add(store.bySlot((int) ranked[i]));
+        return result;
+    }
+
+    private static int count(HashIndex<Integer> index, Collection<Integer> codes) {
+        int count = 0;
+        for (int code : codes) count += index.get(code).size;
+        return count;
+    }
+
+    /**
+     * Returns the people whose name and surname (those that are not null) start with the given prefixes, ignoring case, in slot order.
+     */
+    public List<Person> withPrefix(String namePrefix, String surnamePrefix) {
+        Set<Integer> nameCodes = namePrefix == null ? null : new HashSet<>(prefixes().withPrefix(namePrefix));
+        Set<Integer> surnameCodes = surnamePrefix == null ? null : new HashSet<>(prefixes().withPrefix(surnamePrefix));
+
+        boolean byName = nameCodes != null
+                && (surnameCodes == null || count(names, nameCodes) <= count(surnames, surnameCodes));
+        HashIndex<Integer> index = byName ? names : surnames;
+        Set<Integer> codes = byName ? nameCodes : surnameCodes;
+        Set<Integer> others = byName ? surnameCodes : nameCodes;
+
+        int[] slots = new int[count(index, codes)];
+        int size = 0;
+        for (int code : codes) {
+            Postings postings = index.get(code);
+            for (int i = 0; i < postings.size; i++) {
+                int slot = postings.slots[i];
+                Person person = store.bySlot(slot);
+                if (others == null || others.contains(Person.NAMES.fold(byName ? person.getSurnameCode() : person.getNameCode())))
+                    slots[size++] = slot;
+            }
+        }
+        Arrays.sort(slots, 0, size);
+
+        List<Person> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) result.add(store.bySlot(slots[i]));
+        return result;
+    }
+
+    /**
+     * Returns up to limit names (or surnames) that start with the prefix and someone has, in alphabetical order,
+     * with the number of people having each.
+     */
+    public Map<String, Integer> complete(String prefix, boolean surname, int limit) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        HashIndex<Integer> index = surname ? surnames : names;
+        for (int code : prefixes().withPrefix(prefix)) {
+            if (result.size() == limit) break;
+            int count = index.get(code).size;
+            if (count > 0) result.put(Person.NAMES.value(code), count);
+        }
+        return result;
+    }
+
+    /**
+     * The name dictionary only grows, values added since the last lookup are indexed first.
+     */
+    private PrefixIndex<Integer> prefixes() {
+        for (int size = Person.NAMES.size(); prefixed < size; prefixed++) {
+            if (Person.NAMES.fold(prefixed) == prefixed) namePrefixes.add(Person.NAMES.value(prefixed), prefixed);
+        }
+        return namePrefixes;
+    }
+
+    /**
+     * Slots of the dead people.
+     */
+    public Bitmap deadSlots() {
+        return dead.get(Boolean.TRUE);
+    }
+
+    /**
+     * Slots of the people by the fold code of their sex.
+     */
+    public Map<Integer, Bitmap> sexSlots() {
+        return sexes.bitmaps();
+    }
+
+    /**
+     * Slots of the people by the fold code of their death cause.
+     */
+    public Map<Integer, Bitmap> deathCauseSlots() {
+        return deathCauses.bitmaps();
+    }
+
+    /**
+     * Slots of the people by their cemetery.
+     */
+    public Map<Cemetery, Bitmap> cemeterySlots() {
+        return cemeteries.bitmaps();
+    }
+
+    private static <K> Bitmap intersect(Bitmap bitmap, BitmapIndex<K> index, K key) {
+        if (key == null) return bitmap;
+        return bitmap == null ? index.get(key) : Bitmap.and(bitmap, index.get(key));
+    }
+
+    /**
+     * Removes the slots that are not in the bitmap, if there is one.
+     */
+    private static int[] keep(int[] slots, Bitmap bitmap) {
+        if (bitmap == null) return slots;
+
+        int count = 0;
+        for (int slot : slots)
+            if (bitmap.contains(slot)) slots[count++] = slot;
+        return Arrays.copyOf(slots, count);
+    }
+
+    private static <K> Postings smaller(Postings best, HashIndex<K> index, K key) {
+        if (key == null) return best;
+        Postings postings = index.get(key);
+        return best == null || postings.size < best.size ? postings : best;
+    }
+
+    private static Integer code(int code) {
+        return code < 0 ? null : code;
+    }
+
+    /**
+     * Slots sharing one key. Removal swaps the last slot into the hole, so it does not shift the list.
+     */
+    private static class Postings {
+        private static final Postings EMPTY = new Postings();
+
+        private int[] slots = new int[4];
+        private int size;
+    }
+
+    /**
+     * Slots ordered by an int key, packed as key << 32 | slot into one sorted long array, so a range is a binary search.
+     * It is built on the first query, loading does not pay for sorted inserts. After that changes are inserted in place.
+     */
+    private static class SortedIndex {
+        private static final int NONE = Integer.MIN_VALUE;
+
+        private final PersonStore store;
+        private final ToIntFunction<Person> keyOf;
+        private long[] entries;
+        private int size;
+        private int[] keys;
+        private boolean built;
+
+        SortedIndex(PersonStore store, ToIntFunction<Person> keyOf) {
+            this.store = store;
+            this.keyOf = keyOf;
+        }
+
+        void add(int slot, Person person) {
+            if (!built) return;
+
+            int key = keyOf.applyAsInt(person);
+            if (slot >= keys.length) keys = grow(keys, slot + 1);
+            keys[slot] = key;
+            if (key == NONE) return;
+
+            long entry = entry(key, slot);
+            int index = -Arrays.binarySearch(entries, 0, size, entry) - 1;
+            if (size == entries.length) entries = Arrays.copyOf(entries, size * 2 + 16);
+            System.arraycopy(entries, index, entries, index + 1, size - index);
+            entries[index] = entry;
+            size++;
+        }
+
+        void remove(int slot) {
+            if (!built || slot >= keys.length || keys[slot] == NONE) return;
+
+            int index = Arrays.binarySearch(entries, 0, size, entry(keys[slot], slot));
+            System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+            size--;
+            keys[slot] = NONE;
+        }
+
+        void update(int slot, Person person) {
+            if (!built || (slot < keys.length && keys[slot] == keyOf.applyAsInt(person))) return;
+            remove(slot);
+            add(slot, person);
+        }
+
+        /**
+         * Position of the first entry with a key of at least the given one.
+         */
+        int lowerBound(long key) {
+            build();
+            long entry = key << 32;
+            int low = 0, high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (entries[middle] < entry) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        int[] slots(int from, int to) {
+            int[] slots = new int[Math.max(0, to - from)];
+            for (int i = 0; i < slots.length; i++) slots[i] = (int) entries[from + i];
+            return slots;
+        }
+
+        private void build() {
+            if (built) return;
+
+            keys = new int[Math.max(16, store.slotCount())];
+            Arrays.fill(keys, NONE);
+            entries = new long[Math.max(16, store.size())];
+            size = 0;
+            for (int slot = 0; slot < store.slotCount(); slot++) {
+                Person person = store.bySlot(slot);
+                if (person == null) continue;
+                keys[slot] = keyOf.applyAsInt(person);
+                if (keys[slot] != NONE) entries[size++] = entry(keys[slot], slot);
+            }
+            Arrays.sort(entries, 0, size);
+            built = true;
+        }
+
+        private static long entry(int key, int slot) {
+            return (long) key << 32 | slot;
+        }
+
+        private static int[] grow(int[] array, int minimum) {
+            int length = array.length;
+            int[] grown = Arrays.copyOf(array, Math.max(minimum, length * 2));
+            Arrays.fill(grown, length, grown.length, NONE);
+            return grown;
+        }
+    }
+
+    /**
+     * Lifespans as an interval tree: a treap ordered by birth, where every node also keeps the latest end in its subtree,
+     * so subtrees that end before the queried period are skipped. Nodes are slots, the links live in arrays.
+     * People alive today are open-ended, the exact check against today is Person.livedBetween.
+     * Like SortedIndex it is built on the first query and kept up to date after that.
+     */
+    private static class IntervalIndex {
+        private static final int NIL = -1;
+        private static final int NONE = Integer.MIN_VALUE;
+        private static final int OPEN = Integer.MAX_VALUE;
+
+        private final PersonStore store;
+        private int root = NIL;
+        private int[] left, right, start, end, maxEnd;
+        private int[] found = new int[16];
+        private int foundCount;
+        private boolean built;
+
+        IntervalIndex(PersonStore store) {
+            this.store = store;
+        }
+
+        void add(int slot, Person person) {
+            if (!built) return;
+
+            if (slot >= start.length) grow(slot + 1);
+            if (person.getBirthDate() == null) return;
+
+            start[slot] = person.getBirthDate().getEpochMinute();
+            end[slot] = endOf(person);
+            left[slot] = right[slot] = NIL;
+            maxEnd[slot] = end[slot];
+            root = insert(root, slot);
+        }
+
+        void remove(int slot) {
+            if (!built || slot >= start.length || start[slot] == NONE) return;
+            root = delete(root, slot);
+            start[slot] = NONE;
+        }
+
+        void update(int slot, Person person) {
+            if (!built) return;
+            if (slot < start.length && start[slot] != NONE && person.getBirthDate() != null
+                    && start[slot] == person.getBirthDate().getEpochMinute() && end[slot] == endOf(person))
+                return;
+            remove(slot);
+            add(slot, person);
+        }
+
+        /**
+         * The dead without a death date only have their birth date, the living are open-ended.
+         */
+        private static int endOf(Person person) {
+            if (person.getDeathDate() != null) return person.getDeathDate().getEpochMinute();
+            return person.isDead() ? person.getBirthDate().getEpochMinute() : OPEN;
+        }
+
+        /**
+         * Returns the slots whose interval overlaps from-to (inclusive), or null if there are more than limit of them.
+         */
+        int[] overlapping(int from, int to, int limit) {
+            build();
+            foundCount = 0;
+            if (!collect(root, from, to, limit)) return null;
+            return Arrays.copyOf(found, foundCount);
+        }
+
+        /**
+         * Returns false as soon as more than limit intervals are found.
+         */
+        private boolean collect(int node, int from, int to, int limit) {
+            while (node != NIL && maxEnd[node] >= from) {
+                if (!collect(left[node], from, to, limit)) return false;
+                if (start[node] > to) return true;
+
+                if (end[node] >= from) {
+                    if (foundCount == limit) return false;
+                    if (foundCount == found.length) found = Arrays.copyOf(found, foundCount * 2);
+                    found[foundCount++] = node;
+                }
+                node = right[node];
+            }
+            return true;
+        }
+
+        private int insert(int node, int slot) {
+            if (node == NIL) return slot;
+
+            if (before(slot, node)) {
+                left[node] = insert(left[node], slot);
+                if (priority(left[node]) > priority(node)) node = rotateRight(node);
+            } else {
+                right[node] = insert(right[node], slot);
+                if (priority(right[node]) > priority(node)) node = rotateLeft(node);
+            }
+            updateMaxEnd(node);
+            return node;
+        }
+
+        private int delete(int node, int slot) {
+            if (node == NIL) return NIL;
+            if (node == slot) return merge(left[node], right[node]);
+
+            if (before(slot, node))
+                left[node] = delete(left[node], slot);
+            else
+                right[node] = delete(right[node], slot);
+            updateMaxEnd(node);
+            return node;
+        }
+
+        private int merge(int a, int b) {
+            if (a == NIL) return b;
+            if (b == NIL) return a;
+
+            if (priority(a) > priority(b)) {
+                right[a] = merge(right[a], b);
+                updateMaxEnd(a);
+                return a;
+            } else {
+                left[b] = merge(a, left[b]);
+                updateMaxEnd(b);
+                return b;
+            }
+        }
+
+        private int rotateRight(int node) {
+            int child = left[node];
+            left[node] = right[child];
+            right[child] = node;
+            updateMaxEnd(node);
+            updateMaxEnd(child);
+            return child;
+        }
+
+        private int rotateLeft(int node) {
+            int child = right[node];
+            right[node] = left[child];
+            left[child] = node;
+            updateMaxEnd(node);
+            updateMaxEnd(child);
+            return child;
+        }
+
+        private void updateMaxEnd(int node) {
+            int max = end[node];
+            if (left[node] != NIL) max = Math.max(max, maxEnd[left[node]]);
+            if (right[node] != NIL) max = Math.max(max, maxEnd[right[node]]);
+            maxEnd[node] = max;
+        }
+
+        private boolean before(int a, int b) {
+            return start[a] != start[b] ? start[a] < start[b] : a < b;
+        }
+
+        /**
+         * Pseudo-random but fixed heap priority of a slot, it keeps the treap balanced whatever order people are added in.
+         */
+        private static int priority(int slot) {
+            int hash = slot * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        private void build() {
+            if (built) return;
+
+            start = new int[0];
+            left = right = end = maxEnd = start;
+            grow(Math.max(16, store.slotCount()));
+            built = true;
+            for (int slot = 0; slot < store.slotCount(); slot++) {
+                Person person = store.bySlot(slot);
+                if (person != null) add(slot, person);
+            }
+        }
+
+        private void grow(int minimum) {
+            int length = start.length;
+            int capacity = Math.max(minimum, length * 2);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            end = Arrays.copyOf(end, capacity);
+            maxEnd = Arrays.copyOf(maxEnd, capacity);
+            start = Arrays.copyOf(start, capacity);
+            Arrays.fill(start, length, capacity, NONE);
+        }
+    }
+
+    /**
+     * Like HashIndex, with a bitmap of slots per key.
+     */
+    private static class BitmapIndex<K> {
+        private static final Bitmap EMPTY = new Bitmap();
+
+        private final Function<Person, K> keyOf;
+        private final Map<K, Bitmap> bitmaps = new HashMap<>();
+        private Object[] keys = new Object[16];
+
+        BitmapIndex(Function<Person, K> keyOf) {
+            this.keyOf = keyOf;
+        }
+
+        Bitmap get(K key) {
+            return bitmaps.getOrDefault(key, EMPTY);
+        }
+
+        Map<K, Bitmap> bitmaps() {
+            return Collections.unmodifiableMap(bitmaps);
+        }
+
+        void add(int slot, Person person) {
+            K key = keyOf.apply(person);
+            if (slot >= keys.length) keys = Arrays.copyOf(keys, Math.max(slot + 1, keys.length * 2));
+            keys[slot] = key;
+            if (key != null) bitmaps.computeIfAbsent(key, k -> new Bitmap()).add(slot);
+        }
+
+        void remove(int slot) {
+            if (slot >= keys.length || keys[slot] == null) return;
+
+            Bitmap bitmap = bitmaps.get(keys[slot]);
+            bitmap.remove(slot);
+            if (bitmap.isEmpty()) bitmaps.remove(keys[slot]);
+            keys[slot] = null;
+        }
+
+        void update(int slot, Person person) {
+            if (slot < keys.length && Objects.equals(keys[slot], keyOf.apply(person))) return;
+            remove(slot);
+            add(slot, person);
+        }
+    }
+
+    private static class HashIndex<K> {
+        private final Function<Person, K> keyOf;
+        private final Map<K, Postings> postings = new HashMap<>();
+        private Object[] keys = new Object[16];
+        private int[] positions = new int[16];
+
+        HashIndex(Function<Person, K> keyOf) {
+            this.keyOf = keyOf;
+        }
+
+        Postings get(K key) {
+            return postings.getOrDefault(key, Postings.EMPTY);
+        }
+
+        void add(int slot, Person person) {
+            K key = keyOf.apply(person);
+            if (slot >= keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(slot + 1, keys.length * 2));
+                positions = Arrays.copyOf(positions, keys.length);
+            }
+            keys[slot] = key;
+            if (key == null) return;
+
+            Postings list = postings.computeIfAbsent(key, k -> new Postings());
+            if (list.size == list.slots.length) list.slots = Arrays.copyOf(list.slots, list.size * 2);
+            positions[slot] = list.size;
+            list.slots[list.size++] = slot;
+        }
+
+        void remove(int slot) {
+            if (slot >= keys.length || keys[slot] == null) return;
+
+            Postings list = postings.get(keys[slot]);
+            int last = list.slots[--list.size];
+            list.slots[positions[slot]] = last;
+            positions[last] = positions[slot];
+            if (list.size == 0) postings.remove(keys[slot]);
+            keys[slot] = null;
+        }
+
+        void update(int slot, Person person) {
+            if (slot < keys.length && Objects.equals(keys[slot], keyOf.apply(person))) return;
+            remove(slot);
+            add(slot, person);
+        }
+    }
+}
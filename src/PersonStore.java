@@ -0,0 +1,378 @@
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * People indexed by their 11 digit ID.
+ * IDs are kept as longs in an open-addressing table that maps them to slots of a dense Person array,
+ * so a lookup neither boxes nor hashes a String. Slots of removed people are reused.
+ */
+public class PersonStore {
+
+    private static final int NO_SLOT = -1;
+
+    /**
+     * Scans of at least this many people run on all cores, set with -Dcemetree.parallelScanThreshold=<people>.
+     */
+    static final int PARALLEL_SCAN_THRESHOLD = Integer.getInteger("cemetree.parallelScanThreshold", 100_000);
+
+    private long[] keys;
+
+    private int[] slots;
+
+    private int mask;
+
+    private Person[] people = new Person[16];
+
+    private int slotCount;
+
+    private int[] freeSlots = new int[16];
+
+    private int freeCount;
+
+    private int size;
+
+    private final PersonIndex index = new PersonIndex(this);
+
+    private final AncestorIndex ancestors = new AncestorIndex(this);
+
+    private final FamilyCounts counts = new FamilyCounts(this);
+
+    PersonStore() {
+        resize(32);
+    }
+
+    public Person get(long id) {
+        int index = indexOf(id);
+        return index == NO_SLOT ? null : people[slots[index]];
+    }
+
+    /**
+     * Returns null for anything that is not a valid ID, like the "register" answer of the login question.
+     */
+    public Person get(String id) {
+        long key = Person.parseIdOrNone(id);
+        return key == Person.NO_ID ? null : get(key);
+    }
+
+    public boolean contains(long id) {
+        return indexOf(id) != NO_SLOT;
+    }
+
+    public boolean containsKey(String id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Adds the person, or replaces the person with the same ID in its slot.
+     */
+    public void put(Person person) {
+        long id = person.getIdKey();
+        if (id == Person.NO_ID) throw new IllegalArgumentException("Person without ID: " + person);
+
+        int index = indexOf(id);
+        if (index != NO_SLOT) {
+            int slot = slots[index];
+            Person old = people[slot];
+            if (old != person) {
+                this.index.remove(slot);
+                counts.removing(old);
+                old.setStore(null, NO_SLOT);
+                people[slot] = person;
+                ancestors.remove(slot, old);
+                counts.removed(slot, old);
+                person.setStore(this, slot);
+                this.index.add(slot, person);
+                ancestors.add(slot, person);
+                counts.add(slot, person);
+            }
+            return;
+        }
+
+        if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == people.length) people = Arrays.copyOf(people, people.length * 2);
+            slot = slotCount++;
+        }
+        people[slot] = person;
+        person.setStore(this, slot);
+        this.index.add(slot, person);
+        ancestors.add(slot, person);
+        counts.add(slot, person);
+
+        index = hash(id);
+        while (keys[index] != Person.NO_ID) index = (index + 1) & mask;
+        keys[index] = id;
+        slots[index] = slot;
+        size++;
+    }
+
+    public void remove(Person person) {
+        int index = indexOf(person.getIdKey());
+        if (index == NO_SLOT || people[slots[index]] != person) return;
+
+        int slot = slots[index];
+        counts.removing(person);
+        people[slot] = null;
+        person.setStore(null, NO_SLOT);
+        this.index.remove(slot);
+        ancestors.remove(slot, person);
+        counts.removed(slot, person);
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        freeSlots[freeCount++] = slot;
+        size--;
+
+        // Shift the following entries of the probe sequence back, so lookups never need tombstones
+        int hole = index;
+        for (int next = (hole + 1) & mask; keys[next] != Person.NO_ID; next = (next + 1) & mask) {
+            int home = hash(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                slots[hole] = slots[next];
+                hole = next;
+            }
+        }
+        keys[hole] = Person.NO_ID;
+    }
+
+    /**
+     * Refiles a stored person in the secondary indexes after one of its attributes changed.
+     */
+    public void update(Person person) {
+        int slot = person.getSlot();
+        if (slot >= 0 && slot < slotCount && people[slot] == person) {
+            index.update(slot, person);
+            counts.updated(slot, person);
+        }
+    }
+
+    /**
+     * Takes a stored person off the family counts before its mother or father changes.
+     */
+    void linking(Person person) {
+        int slot = person.getSlot();
+        if (slot >= 0 && slot < slotCount && people[slot] == person) counts.linking(person);
+    }
+
+    /**
+     * Refiles a stored person in the ancestor index and the family counts after its mother or father changed from previous.
+     */
+    void linked(Person person, Person previous) {
+        int slot = person.getSlot();
+        if (slot >= 0 && slot < slotCount && people[slot] == person) {
+            ancestors.linked(person);
+            counts.linked(person, previous);
+        }
+    }
+
+    /**
+     * Suspends the family counts while a file is loaded, the loader links people in no particular order.
+     */
+    void beginLoad() {
+        counts.suspend();
+    }
+
+    /**
+     * Builds the family counts from the loaded links, see beginLoad.
+     */
+    void endLoad() {
+        counts.rebuild();
+    }
+
+    /**
+     * Ancestry of the stored people, see AncestorIndex.
+     */
+    public AncestorIndex ancestors() {
+        return ancestors;
+    }
+
+    /**
+     * Descendant and ancestor counts of the stored people, see FamilyCounts.
+     */
+    public FamilyCounts counts() {
+        return counts;
+    }
+
+    /**
+     * Returns the people that can match the filter, are dead if deadOnly and match the date ranges that are not null,
+     * as chosen by the index planner, or every person if no index applies.
+     */
+    public Collection<Person> candidates(Person filter, boolean deadOnly, Date diedAfter, Date diedBefore, Date livedFrom, Date livedTo) {
+        List<Person> candidates = index.candidates(filter, deadOnly, diedAfter, diedBefore, livedFrom, livedTo);
+        return candidates != null ? candidates : values();
+    }
+
+    /**
+     * Returns the people that pass the predicate among the candidates of the index planner, or among everybody if no
+     * index applies, in candidate or slot order. Large scans run on all cores, see PARALLEL_SCAN_THRESHOLD.
+     */
+    public List<Person> select(Person filter, boolean deadOnly, Date diedAfter, Date diedBefore, Date livedFrom, Date livedTo, Predicate<Person> predicate) {
+        List<Person> candidates = index.candidates(filter, deadOnly, diedAfter, diedBefore, livedFrom, livedTo);
+        if (candidates != null) return select(candidates.toArray(new Person[0]), candidates.size(), predicate);
+        return select(people, slotCount, predicate);
+    }
+
+    /**
+     * Returns the people of the array below count that pass the predicate, skipping free slots.
+     * From PARALLEL_SCAN_THRESHOLD people on the array is split in chunks that are tested on the common fork/join pool,
+     * then joined in array order, so the result is the same as a scan on one thread.
+     */
+    private static List<Person> select(Person[] people, int count, Predicate<Person> predicate) {
+        if (count < PARALLEL_SCAN_THRESHOLD) return select(people, 0, count, predicate);
+
+        int chunkCount = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int chunkSize = (count + chunkCount - 1) / chunkCount;
+        return IntStream.range(0, chunkCount).parallel()
+                .mapToObj(chunk -> select(people, Math.min(count, chunk * chunkSize), Math.min(count, (chunk + 1) * chunkSize), predicate))
+                .flatMap(List::stream)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static List<Person> select(Person[] people, int from, int to, Predicate<Person> predicate) {
+        List<Person> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            if (people[i] != null && predicate.test(people[i])) result.add(people[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Slots of the dead people. Bitmaps of the index must not be changed.
+     */
+    public Bitmap deadSlots() {
+        return index.deadSlots();
+    }
+
+    public Map<Integer, Bitmap> sexSlots() {
+        return index.sexSlots();
+    }
+
+    public Map<Integer, Bitmap> deathCauseSlots() {
+        return index.deathCauseSlots();
+    }
+
+    public Map<Cemetery, Bitmap> cemeterySlots() {
+        return index.cemeterySlots();
+    }
+
+    public double sumOfAges(Bitmap slots) {
+        return index.sumOfAges(slots);
+    }
+
+    /**
+     * Returns the people whose name and surname are close to the given ones, closest first. See PersonIndex.closest.
+     */
+    public List<Person> closest(String name, String surname) {
+        return index.closest(name, surname);
+    }
+
+    /**
+     * Returns the people whose name and surname start with the given prefixes, in slot order. See PersonIndex.withPrefix.
+     */
+    public List<Person> withPrefix(String namePrefix, String surnamePrefix) {
+        return index.withPrefix(namePrefix, surnamePrefix);
+    }
+
+    /**
+     * Returns completions of a name or surname prefix with the number of people having them. See PersonIndex.complete.
+     */
+    public Map<String, Integer> complete(String prefix, boolean surname, int limit) {
+        return index.complete(prefix, surname, limit);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the person in the given slot, or null if the slot is free.
+     */
+    public Person bySlot(int slot) {
+        return slot < 0 || slot >= slotCount ? null : people[slot];
+    }
+
+    /**
+     * Number of slots in use or free, every slot is below this.
+     */
+    public int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Live view of the people, in slot order.
+     */
+    public Collection<Person> values() {
+        return new AbstractCollection<>() {
+            public Iterator<Person> iterator() {
+                return new Iterator<>() {
+                    private int slot = nextSlot(0);
+
+                    public boolean hasNext() {
+                        return slot < slotCount;
+                    }
+
+                    public Person next() {
+                        if (slot >= slotCount) throw new NoSuchElementException();
+                        Person person = people[slot];
+                        slot = nextSlot(slot + 1);
+                        return person;
+                    }
+                };
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int nextSlot(int slot) {
+        while (slot < slotCount && people[slot] == null) slot++;
+        return slot;
+    }
+
+    private int indexOf(long id) {
+        if (id == Person.NO_ID) return NO_SLOT;
+
+        for (int index = hash(id); keys[index] != Person.NO_ID; index = (index + 1) & mask) {
+            if (keys[index] == id) return index;
+        }
+        return NO_SLOT;
+    }
+
+    private int hash(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+
+        keys = new long[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, Person.NO_ID);
+
+        if (oldKeys == null) return;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == Person.NO_ID) continue;
+            int index = hash(oldKeys[i]);
+            while (keys[index] != Person.NO_ID) index = (index + 1) & mask;
+            keys[index] = oldKeys[i];
+            slots[index] = oldSlots[i];
+        }
+    }
+}
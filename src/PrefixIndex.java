@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Values sorted by a case-insensitive key, so the values whose key starts with a prefix are one binary search away.
+ * Entries added before the first query are sorted once, after that they are inserted in place.
+ */
+public class PrefixIndex<V> {
+
+    private static final Comparator<Entry<?>> ORDER = Comparator.comparing(Entry::key);
+
+    private Entry<V>[] entries = newEntries(16);
+
+    private int size;
+
+    private boolean sorted;
+
+    /**
+     * Null keys are not indexed.
+     */
+    public void add(String key, V value) {
+        if (key == null) return;
+
+        Entry<V> entry = new Entry<>(StringPool.fold(key), value);
+        if (size == entries.length) entries = Arrays.copyOf(entries, size * 2);
+
+        int index = size;
+        if (sorted) {
+            index = lowerBound(entry.key);
+            System.arraycopy(entries, index, entries, index + 1, size - index);
+        }
+        entries[index] = entry;
+        size++;
+    }
+
+    public void remove(String key, V value) {
+        if (key == null) return;
+        sort();
+
+        String folded = StringPool.fold(key);
+        for (int index = lowerBound(folded); index < size && entries[index].key.equals(folded); index++) {
+            if (Objects.equals(entries[index].value, value)) {
+                System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+                entries[--size] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the values whose key starts with the prefix, ignoring case, in key order.
+     */
+    public List<V> withPrefix(String prefix) {
+        return withPrefix(prefix, Integer.MAX_VALUE);
+    }
+
+    public List<V> withPrefix(String prefix, int limit) {
+        sort();
+
+        String folded = StringPool.fold(prefix);
+        List<V> result = new ArrayList<>();
+        for (int index = lowerBound(folded); index < size && result.size() < limit && entries[index].key.startsWith(folded); index++)
+            result.add(entries[index].value);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Position of the first entry with a key of at least the given one.
+     */
+    private int lowerBound(String key) {
+        int low = 0, high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries[middle].key.compareTo(key) < 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private void sort() {
+        if (sorted) return;
+        Arrays.sort(entries, 0, size, ORDER);
+        sorted = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Entry<V>[] newEntries(int length) {
+        return (Entry<V>[]) new Entry<?>[length];
+    }
+
+    private record Entry<V>(String key, V value) {
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cemeteries in a tree of country, city, district and neighbourhood, each level keyed by the fold code of the place.
+ * A filter descends straight to the regions it names, and every region keeps the number of cemeteries below it.
+ * Regions and cemeteries are kept in the order they were first added.
+ */
+public class RegionIndex {
+
+    public static final List<String> LEVELS = List.of("country", "city", "district", "neighbourhood");
+
+    private final Node root = new Node(null, StringPool.NONE);
+
+    /**
+     * Neighbourhood of each cemetery, so it can be removed after its address changed.
+     */
+    private final Map<Cemetery, Node> leaves = new IdentityHashMap<>();
+
+    public void add(Cemetery cemetery) {
+        if (cemetery.getAddress() == null || leaves.containsKey(cemetery)) return;
+
+        Node node = root;
+        node.count++;
+        for (int key : cemetery.getAddress().regionKeys()) {
+            Node child = node.children.get(key);
+            if (child == null) node.children.put(key, child = new Node(node, key));
+            node = child;
+            node.count++;
+        }
+        node.cemeteries.add(cemetery);
+        leaves.put(cemetery, node);
+    }
+
+    public void remove(Cemetery cemetery) {
+        Node node = leaves.remove(cemetery);
+        if (node == null) return;
+
+        node.cemeteries.remove(cemetery);
+        for (; node != null; node = node.parent) {
+            node.count--;
+            if (node.count == 0 && node.parent != null) node.parent.children.remove(node.key);
+        }
+    }
+
+    public int size() {
+        return root.count;
+    }
+
+    /**
+     * Returns the cemeteries in the regions the filter names. The street is not a level of the tree, it is left to the caller.
+     */
+    public List<Cemetery> find(Address filter) {
+        List<Cemetery> result = new ArrayList<>();
+        for (Node node : descend(keys(filter), LEVELS.size())) collect(node, result);
+        return result;
+    }
+
+    /**
+     * Returns the regions one level below the deepest one the filter names, or the neighbourhoods it names.
+     * With an empty filter these are the countries.
+     */
+    public List<Region> regions(Address filter) {
+        int[] keys = keys(filter);
+        int depth = 1;
+        for (int level = 0; level < keys.length; level++) {
+            if (keys[level] != StringPool.NONE) depth = Math.min(level + 2, LEVELS.size());
+        }
+
+        List<Region> result = new ArrayList<>();
+        for (Node node : descend(keys, depth)) {
+            List<Cemetery> cemeteries = new ArrayList<>(node.count);
+            collect(node, cemeteries);
+            result.add(new Region(Address.PLACES.value(node.key), path(node.parent), node.count, cemeteries));
+        }
+        return result;
+    }
+
+    private static int[] keys(Address filter) {
+        if (filter != null) return filter.regionKeys();
+        int[] keys = new int[LEVELS.size()];
+        Arrays.fill(keys, StringPool.NONE);
+        return keys;
+    }
+
+    /**
+     * The nodes at the given depth below the root whose path matches the keys, a NONE key matches every node of its level.
+     */
+    private List<Node> descend(int[] keys, int depth) {
+        List<Node> nodes = List.of(root);
+        for (int level = 0; level < depth; level++) {
+            List<Node> next = new ArrayList<>();
+            for (Node node : nodes) {
+                if (keys[level] == StringPool.NONE) {
+                    next.addAll(node.children.values());
+                } else {
+                    Node child = node.children.get(keys[level]);
+                    if (child != null) next.add(child);
+                }
+            }
+            nodes = next;
+        }
+        return nodes;
+    }
+
+    private static void collect(Node node, List<Cemetery> result) {
+        result.addAll(node.cemeteries);
+        for (Node child : node.children.values()) collect(child, result);
+    }
+
+    /**
+     * Names of the node and its parents from the country down, like "Türkiye / İzmir".
+     */
+    private static String path(Node node) {
+        if (node == null || node.parent == null) return "";
+        String parent = path(node.parent);
+        String name = Address.PLACES.value(node.key);
+        return parent.isEmpty() ? String.valueOf(name) : parent + " / " + name;
+    }
+
+    /**
+     * A region with the names of the regions it is in, the number of cemeteries in it and the cemeteries themselves.
+     */
+    public record Region(String name, String parent, int cemeteryCount, List<Cemetery> cemeteries) {
+    }
+
+    private static class Node {
+        private final Node parent;
+        private final int key;
+        private final Map<Integer, Node> children = new LinkedHashMap<>();
+        private final List<Cemetery> cemeteries = new ArrayList<>();
+        private int count;
+
+        private Node(Node parent, int key) {
+            this.parent = parent;
+            this.key = key;
+        }
+    }
+}
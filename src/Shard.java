@@ -0,0 +1,91 @@
+import java.util.*;
+
+/**
+ * Group of people saved to the same pair of people/visitors files.
+ * People are sharded by the province prefix of their cemetery ID ("35" for "35-068"), people without a cemetery go to "none".
+ * Mutators of Person and Cemetery mark the shard dirty so a save only rewrites the shards that changed.
+ */
+public class Shard {
+
+    public static final String UNBURIED = "none";
+
+    private final Registry registry;
+
+    private final String key;
+
+    private final Set<Person> people = new HashSet<>();
+
+    private boolean dirty;
+
+    private Shard(Registry registry, String key) {
+        this.registry = registry;
+        this.key = key;
+    }
+
+    public static String keyOf(Cemetery cemetery) {
+        if (cemetery == null || cemetery.getId() == null) return UNBURIED;
+        int separator = cemetery.getId().indexOf('-');
+        return separator == -1 ? cemetery.getId() : cemetery.getId().substring(0, separator);
+    }
+
+    public void add(Person person) {
+        people.add(person);
+        person.setShard(this);
+        dirty = true;
+    }
+
+    public void remove(Person person) {
+        people.remove(person);
+        person.setShard(null);
+        dirty = true;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Set<Person> getPeople() {
+        return people;
+    }
+
+    public Registry getRegistry() {
+        return registry;
+    }
+
+    public static class Registry {
+
+        private final Map<String, Shard> shards = new TreeMap<>();
+
+        public Shard of(Cemetery cemetery) {
+            return shards.computeIfAbsent(keyOf(cemetery), key -> new Shard(this, key));
+        }
+
+        public void add(Person person) {
+            of(person.getCemetery()).add(person);
+        }
+
+        public void remove(Person person) {
+            if (person.getShard() != null) person.getShard().remove(person);
+        }
+
+        public Collection<Shard> getShards() {
+            return shards.values();
+        }
+
+        public void setDirty(boolean dirty) {
+            for (Shard shard : shards.values()) shard.setDirty(dirty);
+        }
+    }
+}
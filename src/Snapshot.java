@@ -0,0 +1,236 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Compact binary image of all cemeteries, people and visits.
+ * Strings are dictionary-encoded and relationships are stored as indexes into the people table,
+ * so loading does not need to parse rows or run Person.connect again.
+ */
+public class Snapshot {
+
+    private static final int MAGIC = 0x434D5453;
+
+    private static final int VERSION = 3;
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    public static String fileName(String fileName) {
+        return fileName + "_snapshot.bin";
+    }
+
+    public static void write(String fileName, Map<String, Cemetery> cemeteries, PersonStore people) throws IOException {
+        List<Cemetery> cemeteryList = new ArrayList<>(cemeteries.values());
+        List<Person> peopleList = new ArrayList<>(people.values());
+
+        Map<Cemetery, Integer> cemeteryIndexes = new HashMap<>();
+        for (int i = 0; i < cemeteryList.size(); i++) cemeteryIndexes.put(cemeteryList.get(i), i);
+
+        Map<Person, Integer> personIndexes = new HashMap<>();
+        for (int i = 0; i < peopleList.size(); i++) personIndexes.put(peopleList.get(i), i);
+
+        Dictionary dictionary = new Dictionary();
+        for (Cemetery cemetery : cemeteryList) {
+            Address address = cemetery.getAddress();
+            dictionary.add(cemetery.getId(), cemetery.getName(), address.getCountry(), address.getCity(), address.getDistrict(), address.getNeighbourhood(), address.getStreet());
+        }
+        for (Person person : peopleList) {
+            dictionary.add(person.getName(), person.getSurname(), person.getSex(), person.getDeathCause());
+        }
+
+        // Written and synced next to the snapshot first, so a crash while writing never leaves a truncated snapshot behind
+        File temp = new File(fileName(fileName) + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(dictionary.values.size());
+            for (String value : dictionary.values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(cemeteryList.size());
+            for (Cemetery cemetery : cemeteryList) {
+                Address address = cemetery.getAddress();
+                out.writeInt(dictionary.code(cemetery.getId()));
+                out.writeInt(dictionary.code(cemetery.getName()));
+                out.writeInt(dictionary.code(address.getCountry()));
+                out.writeInt(dictionary.code(address.getCity()));
+                out.writeInt(dictionary.code(address.getDistrict()));
+                out.writeInt(dictionary.code(address.getNeighbourhood()));
+                out.writeInt(dictionary.code(address.getStreet()));
+                out.writeDouble(address.getLatitude());
+                out.writeDouble(address.getLongitude());
+                out.writeInt(cemetery.getCount());
+            }
+
+            out.writeInt(peopleList.size());
+            for (Person person : peopleList) {
+                out.writeLong(person.getIdKey());
+                out.writeInt(dictionary.code(person.getName()));
+                out.writeInt(dictionary.code(person.getSurname()));
+                out.writeInt(dictionary.code(person.getSex()));
+                out.writeInt(dictionary.code(person.getDeathCause()));
+                out.writeLong(person.getMotherIdKey());
+                out.writeLong(person.getFatherIdKey());
+                out.writeLong(person.getSpouseIdKey());
+                out.writeByte((person.isAdmin() ? 1 : 0) | (person.isDead() ? 2 : 0));
+                out.writeInt(person.getCemetery() == null ? -1 : cemeteryIndexes.getOrDefault(person.getCemetery(), -1));
+                out.writeInt(person.getBirthDate() == null ? NO_DATE : person.getBirthDate().getEpochMinute());
+                out.writeInt(person.getDeathDate() == null ? NO_DATE : person.getDeathDate().getEpochMinute());
+            }
+
+            // Relationship indexes
+            for (Person person : peopleList) {
+                out.writeInt(indexOf(personIndexes, person.getMother()));
+                out.writeInt(indexOf(personIndexes, person.getFather()));
+                out.writeInt(indexOf(personIndexes, person.getSpouse()));
+
+                List<Person> children = person.getChildren();
+                int childCount = 0;
+                for (Person child : children) if (personIndexes.containsKey(child)) childCount++;
+                out.writeInt(childCount);
+                for (Person child : children) {
+                    if (personIndexes.containsKey(child)) out.writeInt(personIndexes.get(child));
+                }
+            }
+
+            int visitCount = 0;
+            for (Cemetery cemetery : cemeteryList) {
+                for (Map.Entry<Person, SortedSet<Cemetery.Visit>> entry : cemetery.getVisitorList().entrySet()) {
+                    for (Cemetery.Visit visit : entry.getValue()) {
+                        if (personIndexes.containsKey(entry.getKey()) && personIndexes.containsKey(visit.getPerson()))
+                            visitCount++;
+                    }
+                }
+            }
+
+            out.writeInt(visitCount);
+            for (int i = 0; i < cemeteryList.size(); i++) {
+                for (Map.Entry<Person, SortedSet<Cemetery.Visit>> entry : cemeteryList.get(i).getVisitorList().entrySet()) {
+                    for (Cemetery.Visit visit : entry.getValue()) {
+                        if (personIndexes.containsKey(entry.getKey()) && personIndexes.containsKey(visit.getPerson())) {
+                            out.writeInt(i);
+                            out.writeInt(personIndexes.get(entry.getKey()));
+                            out.writeInt(personIndexes.get(visit.getPerson()));
+                            out.writeInt(visit.getDate().getEpochMinute());
+                        }
+                    }
+                }
+            }
+
+            out.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(temp.toPath(), Path.of(fileName(fileName)), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void read(String fileName, Map<String, Cemetery> cemeteries, PersonStore people) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName(fileName)), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Unsupported snapshot: " + fileName(fileName));
+
+            String[] dictionary = new String[in.readInt()];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < dictionary.length; i++) {
+                int length = in.readInt();
+                if (bytes.length < length) bytes = new byte[length];
+                in.readFully(bytes, 0, length);
+                dictionary[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            Cemetery[] cemeteryList = new Cemetery[in.readInt()];
+            for (int i = 0; i < cemeteryList.length; i++) {
+                String id = value(dictionary, in.readInt());
+                String name = value(dictionary, in.readInt());
+                Address address = new Address(value(dictionary, in.readInt()), value(dictionary, in.readInt()), value(dictionary, in.readInt()),
+                        value(dictionary, in.readInt()), value(dictionary, in.readInt()), in.readDouble(), in.readDouble());
+
+                Cemetery cemetery = new Cemetery(id, name, address);
+                cemetery.setCount(in.readInt());
+                cemeteryList[i] = cemetery;
+                cemeteries.put(id, cemetery);
+            }
+
+            Person[] peopleList = new Person[in.readInt()];
+            for (int i = 0; i < peopleList.length; i++) {
+                long id = in.readLong();
+                String name = value(dictionary, in.readInt());
+                String surname = value(dictionary, in.readInt());
+                String sex = value(dictionary, in.readInt());
+                String deathCause = value(dictionary, in.readInt());
+                long motherId = in.readLong();
+                long fatherId = in.readLong();
+                long spouseId = in.readLong();
+                int flags = in.readByte();
+                int cemetery = in.readInt();
+                Date birthDate = date(in.readInt());
+                Date deathDate = date(in.readInt());
+
+                Person person = new Person(id, name, surname, sex, (flags & 1) != 0, (flags & 2) != 0, deathCause,
+                        cemetery == -1 ? null : cemeteryList[cemetery], birthDate, deathDate, motherId, fatherId, spouseId);
+                peopleList[i] = person;
+                people.put(person);
+            }
+
+            for (Person person : peopleList) {
+                person.setMother(person(peopleList, in.readInt()));
+                person.setFather(person(peopleList, in.readInt()));
+                person.setSpouse(person(peopleList, in.readInt()));
+
+                int childCount = in.readInt();
+                for (int i = 0; i < childCount; i++) person.addChild(peopleList[in.readInt()]);
+            }
+
+            int visitCount = in.readInt();
+            for (int i = 0; i < visitCount; i++) {
+                Cemetery cemetery = cemeteryList[in.readInt()];
+                Person visitedPerson = peopleList[in.readInt()];
+                Person visitorPerson = peopleList[in.readInt()];
+                cemetery.addVisitor(visitedPerson, visitorPerson, date(in.readInt()));
+            }
+        }
+    }
+
+    private static int indexOf(Map<Person, Integer> personIndexes, Person person) {
+        return person == null ? -1 : personIndexes.getOrDefault(person, -1);
+    }
+
+    private static String value(String[] dictionary, int code) {
+        return code == -1 ? null : dictionary[code];
+    }
+
+    private static Person person(Person[] peopleList, int index) {
+        return index == -1 ? null : peopleList[index];
+    }
+
+    private static Date date(int epochMinute) {
+        return epochMinute == NO_DATE ? null : Date.ofEpochMinute(epochMinute);
+    }
+
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        void add(String... strings) {
+            for (String value : strings) {
+                if (value != null && !codes.containsKey(value)) {
+                    codes.put(value, values.size());
+                    values.add(value);
+                }
+            }
+        }
+
+        int code(String value) {
+            return value == null ? -1 : codes.get(value);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Values placed by latitude and longitude, for nearest neighbour and radius searches.
+ * Points are kept as unit vectors in a k-d tree, the straight line between two of them grows with their great circle
+ * distance, so a box of the tree can be ruled out without any trigonometry. Changes rebuild the tree on the next search.
+ */
+public class SpatialIndex<V> {
+
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final List<V> values = new ArrayList<>();
+
+    private final List<double[]> points = new ArrayList<>();
+
+    private double[][] tree;
+
+    private List<V> treeValues;
+
+    public void add(double latitude, double longitude, V value) {
+        values.add(value);
+        points.add(toPoint(latitude, longitude));
+        tree = null;
+    }
+
+    public void remove(V value) {
+        int index = values.indexOf(value);
+        if (index < 0) return;
+        values.remove(index);
+        points.remove(index);
+        tree = null;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Returns the values within the radius of the given place, closest first.
+     */
+    public List<V> within(double latitude, double longitude, double radiusKm, Predicate<V> filter) {
+        return nearest(latitude, longitude, Integer.MAX_VALUE, radiusKm, filter);
+    }
+
+    /**
+     * Returns at most limit values that pass the filter, closest first, leaving out values further than maxKm.
+     */
+    public List<V> nearest(double latitude, double longitude, int limit, double maxKm, Predicate<V> filter) {
+        build();
+
+        double[] target = toPoint(latitude, longitude);
+        double maxChord = toChord(maxKm);
+        // The furthest of the closest values found so far is on top
+        PriorityQueue<Hit> hits = new PriorityQueue<>((a, b) -> Double.compare(b.chord, a.chord));
+        search(0, tree.length, 0, target, limit, maxChord, filter, hits);
+
+        List<V> result = new ArrayList<>(hits.size());
+        while (!hits.isEmpty()) result.add(treeValues.get(hits.poll().index));
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Great circle distance between two places in kilometres, by the haversine formula.
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.pow(Math.sin(dLatitude / 2), 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * Math.pow(Math.sin(dLongitude / 2), 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Searches the subtree of the points from..to, whose root is the middle one and splits on the axis of its depth.
+     */
+    private void search(int from, int to, int depth, double[] target, int limit, double maxChord, Predicate<V> filter, PriorityQueue<Hit> hits) {
+        if (from >= to) return;
+
+        int middle = (from + to) >>> 1;
+        int axis = depth % 3;
+        double[] point = tree[middle];
+
+        double chord = chord(point, target);
+        if (chord <= bound(limit, maxChord, hits) && filter.test(treeValues.get(middle))) {
+            hits.add(new Hit(middle, chord));
+            if (hits.size() > limit) hits.poll();
+        }
+
+        double difference = target[axis] - point[axis];
+        boolean lowFirst = difference < 0;
+        if (lowFirst) search(from, middle, depth + 1, target, limit, maxChord, filter, hits);
+        else search(middle + 1, to, depth + 1, target, limit, maxChord, filter, hits);
+
+        // The other side is at least the distance to the splitting plane away
+        if (Math.abs(difference) <= bound(limit, maxChord, hits)) {
+            if (lowFirst) search(middle + 1, to, depth + 1, target, limit, maxChord, filter, hits);
+            else search(from, middle, depth + 1, target, limit, maxChord, filter, hits);
+        }
+    }
+
+    private static double bound(int limit, double maxChord, PriorityQueue<Hit> hits) {
+        return hits.size() < limit ? maxChord : Math.min(maxChord, hits.peek().chord);
+    }
+
+    private void build() {
+        if (tree != null) return;
+
+        Integer[] order = new Integer[values.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        build(order, 0, order.length, 0);
+
+        tree = new double[order.length][];
+        treeValues = new ArrayList<>(order.length);
+        for (int i = 0; i < order.length; i++) {
+            tree[i] = points.get(order[i]);
+            treeValues.add(values.get(order[i]));
+        }
+    }
+
+    /**
+     * Orders the points from..to so the middle one splits them on the axis of the depth, then does the same for both halves.
+     */
+    private void build(Integer[] order, int from, int to, int depth) {
+        if (to - from < 2) return;
+
+        int axis = depth % 3;
+        Arrays.sort(order, from, to, (a, b) -> Double.compare(points.get(a)[axis], points.get(b)[axis]));
+        int middle = (from + to) >>> 1;
+        build(order, from, middle, depth + 1);
+        build(order, middle + 1, to, depth + 1);
+    }
+
+    private static double[] toPoint(double latitude, double longitude) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        return new double[]{Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    /**
+     * Straight line distance through a unit sphere between two points that are the given distance apart on the surface.
+     * Any point is closer than half way around the earth.
+     */
+    private static double toChord(double km) {
+        if (km >= Math.PI * EARTH_RADIUS_KM) return Double.POSITIVE_INFINITY;
+        return 2 * Math.sin(km / EARTH_RADIUS_KM / 2);
+    }
+
+    private static double chord(double[] a, double[] b) {
+        double x = a[0] - b[0], y = a[1] - b[1], z = a[2] - b[2];
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    private record Hit(int index, double chord) {
+    }
+}
@@ -0,0 +1,129 @@
+import java.text.CollationKey;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of repeated attribute values. Every distinct value is stored once and records keep its small integer code.
+ * Values that are equal ignoring case share a fold code, so case-insensitive filters compare two ints.
+ * Case follows the Turkish rules of Collation, and every value has a rank in Turkish alphabetical order for sorting.
+ * Interning is thread-safe, the parallel loader interns from several threads.
+ */
+public class StringPool {
+
+    /**
+     * Code of a null value.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Code of a value that is not in the pool. It is never equal to the code of a stored value.
+     */
+    public static final int MISSING = -2;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> foldCodes = new ConcurrentHashMap<>();
+
+    private volatile String[] values = new String[64];
+
+    private volatile int[] folds = new int[64];
+
+    private int size;
+
+    private CollationKey[] sortKeys = new CollationKey[0];
+
+    private int[] ranks = new int[0];
+
+    public int intern(String value) {
+        if (value == null) return NONE;
+
+        Integer code = codes.get(value);
+        if (code != null) return code;
+
+        synchronized (this) {
+            code = codes.get(value);
+            if (code != null) return code;
+
+            if (size == values.length) {
+                folds = Arrays.copyOf(folds, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            int newCode = size;
+            folds[newCode] = foldCodes.computeIfAbsent(fold(value), key -> newCode);
+            values[newCode] = value;
+            size++;
+            codes.put(value, newCode);
+            return newCode;
+        }
+    }
+
+    /**
+     * Returns the code of the value, or MISSING without adding it.
+     */
+    public int find(String value) {
+        if (value == null) return NONE;
+        return codes.getOrDefault(value, MISSING);
+    }
+
+    /**
+     * Returns the fold code of the values equal to the given one ignoring case, or MISSING if there are none.
+     */
+    public int findIgnoreCase(String value) {
+        if (value == null) return NONE;
+        return foldCodes.getOrDefault(fold(value), MISSING);
+    }
+
+    public String value(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    /**
+     * Codes of values that are equal ignoring case have the same fold code.
+     */
+    public int fold(int code) {
+        return code < 0 ? code : folds[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the rank of every code in Turkish alphabetical order, values that collate equal have the same rank.
+     * Sorting by rank compares two ints. Ranks are computed again after values were added, sort keys only for the new values.
+     */
+    public synchronized int[] ranks() {
+        if (ranks.length == size) return ranks;
+
+        int oldSize = sortKeys.length;
+        sortKeys = Arrays.copyOf(sortKeys, size);
+        for (int code = oldSize; code < size; code++) sortKeys[code] = Collation.sortKey(values[code]);
+
+        Integer[] order = new Integer[size];
+        for (int code = 0; code < size; code++) order[code] = code;
+        Arrays.sort(order, (a, b) -> sortKeys[a].compareTo(sortKeys[b]));
+
+        int[] ranks = new int[size];
+        for (int i = 0, rank = 0; i < size; i++) {
+            if (i > 0 && sortKeys[order[i]].compareTo(sortKeys[order[i - 1]]) != 0) rank = i;
+            ranks[order[i]] = rank;
+        }
+        return this.ranks = ranks;
+    }
+
+    /**
+     * Rank of a code in the given ranks, null values come first.
+     */
+    public static int rank(int[] ranks, int code) {
+        return code < 0 ? -1 : ranks[code];
+    }
+
+    /**
+     * Match key of Collation, equal ignoring case by the Turkish rules.
+     */
+    static String fold(String value) {
+        return Collation.matchKey(value);
+    }
+}
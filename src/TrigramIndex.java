@@ -0,0 +1,214 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trigram index over the values of a StringPool, for lookups that tolerate typos.
+ * Values are indexed by fold code, after removing case and Turkish letters, so "cagla" finds "ÇAĞLA".
+ * The pool only grows, new values are indexed on the next search.
+ */
+public class TrigramIndex {
+
+    private final StringPool pool;
+
+    private final Map<Long, Codes> grams = new HashMap<>();
+
+    private Codes[] lengths = new Codes[16];
+
+    private String[] normalized = new String[64];
+
+    private int indexed;
+
+    private int[] counts = new int[64];
+
+    private int[] letters = new int[64];
+
+    private int[][] rows = new int[3][16];
+
+    TrigramIndex(StringPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the fold codes of the values within the allowed edit distance of the query, with their distance.
+     * Typing "ahmte" for "ahmet" is one edit. The allowed distance grows with the length of the query, see maxDistance.
+     */
+    public Map<Integer, Integer> search(String query) {
+        catchUp();
+
+        String text = normalize(query);
+        int maxDistance = maxDistance(text);
+        Map<Integer, Integer> result = new HashMap<>();
+
+        long[] queryGrams = Arrays.stream(trigrams(text)).distinct().toArray();
+        int required = queryGrams.length - 4 * maxDistance;
+
+        // An edit breaks at most three trigrams and a swap four, a short query can not rule anything out that way.
+        // Then only the values of a close length are compared.
+        if (required <= 0) {
+            int from = Math.max(0, text.length() - maxDistance);
+            int to = Math.min(lengths.length - 1, text.length() + maxDistance);
+            for (int length = from; length <= to; length++) {
+                Codes codes = lengths[length];
+                if (codes == null) continue;
+                for (int i = 0; i < codes.size; i++) check(codes.codes[i], text, maxDistance, result);
+            }
+            return result;
+        }
+
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (long gram : queryGrams) {
+            Codes codes = grams.get(gram);
+            if (codes == null) continue;
+            for (int i = 0; i < codes.size; i++) {
+                int code = codes.codes[i];
+                if (counts[code]++ == 0) {
+                    if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                    touched[touchedCount++] = code;
+                }
+            }
+        }
+
+        for (int i = 0; i < touchedCount; i++) {
+            int code = touched[i];
+            if (counts[code] >= required) check(code, text, maxDistance, result);
+            counts[code] = 0;
+        }
+        return result;
+    }
+
+    /**
+     * One typo is allowed from three letters on and two from six letters on.
+     */
+    static int maxDistance(String text) {
+        return text.length() <= 2 ? 0 : text.length() <= 5 ? 1 : 2;
+    }
+
+    private void check(int code, String text, int maxDistance, Map<Integer, Integer> result) {
+        String value = normalized[code];
+        if (Math.abs(value.length() - text.length()) > maxDistance) return;
+
+        // An edit changes the letter counts by at most two, a swap does not change them
+        for (int i = 0; i < text.length(); i++) letters[text.charAt(i) & 63]++;
+        for (int i = 0; i < value.length(); i++) letters[value.charAt(i) & 63]--;
+        int difference = 0;
+        for (int i = 0; i < text.length(); i++) {
+            difference += Math.abs(letters[text.charAt(i) & 63]);
+            letters[text.charAt(i) & 63] = 0;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            difference += Math.abs(letters[value.charAt(i) & 63]);
+            letters[value.charAt(i) & 63] = 0;
+        }
+        if (difference > 2 * maxDistance) return;
+
+        if (rows[0].length <= value.length()) rows = new int[3][value.length() + 1];
+        int distance = distance(text, value, maxDistance, rows);
+        if (distance <= maxDistance) result.put(code, distance);
+    }
+
+    private void catchUp() {
+        int size = pool.size();
+        if (size > normalized.length) {
+            normalized = Arrays.copyOf(normalized, Math.max(size, normalized.length * 2));
+            counts = new int[normalized.length];
+        }
+
+        for (; indexed < size; indexed++) {
+            int code = indexed;
+            if (pool.fold(code) != code) continue;
+
+            normalized[code] = normalize(pool.value(code));
+            int length = normalized[code].length();
+            if (length >= lengths.length) lengths = Arrays.copyOf(lengths, Math.max(length + 1, lengths.length * 2));
+            if (lengths[length] == null) lengths[length] = new Codes();
+            add(lengths[length], code);
+            for (long gram : trigrams(normalized[code])) {
+                Codes codes = grams.computeIfAbsent(gram, key -> new Codes());
+                if (codes.size == 0 || codes.codes[codes.size - 1] != code) add(codes, code);
+            }
+        }
+    }
+
+    private static void add(Codes codes, int code) {
+        if (codes.size == codes.codes.length) codes.codes = Arrays.copyOf(codes.codes, codes.size * 2);
+        codes.codes[codes.size++] = code;
+    }
+
+    /**
+     * Trigrams of the text padded with a boundary mark on both sides, three chars packed into a long.
+     */
+    private static long[] trigrams(String text) {
+        String padded = "\u0002" + text + "\u0003";
+        long[] result = new long[Math.max(0, padded.length() - 2)];
+        for (int i = 0; i < result.length; i++)
+            result[i] = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+        return result;
+    }
+
+    /**
+     * Optimal string alignment distance (Levenshtein with swaps of neighbours), or maxDistance + 1 once it is exceeded.
+     */
+    static int distance(String a, String b, int maxDistance) {
+        return distance(a, b, maxDistance, new int[3][b.length() + 1]);
+    }
+
+    /**
+     * Same as distance, using the three given rows of at least b.length() + 1 ints.
+     */
+    private static int distance(String a, String b, int maxDistance, int[][] rows) {
+        int[] previous2 = rows[0];
+        int[] previous = rows[1];
+        int[] current = rows[2];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+                    value = Math.min(value, previous2[j - 2] + 1);
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > maxDistance) return maxDistance + 1;
+
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], maxDistance + 1);
+    }
+
+    /**
+     * Lower case without Turkish letters, the way names are typed on a keyboard without them.
+     */
+    static String normalize(String value) {
+        char[] chars = value.trim().toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            char c = Character.toLowerCase(Character.toUpperCase(chars[i]));
+            chars[i] = switch (c) {
+                case 'ç' -> 'c';
+                case 'ğ' -> 'g';
+                case 'ı' -> 'i';
+                case 'ö' -> 'o';
+                case 'ş' -> 's';
+                case 'ü' -> 'u';
+                case 'â' -> 'a';
+                case 'î' -> 'i';
+                case 'û' -> 'u';
+                default -> c;
+            };
+        }
+        return new String(chars);
+    }
+
+    private static class Codes {
+        private int[] codes = new int[4];
+        private int size;
+    }
+}